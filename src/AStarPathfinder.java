@@ -0,0 +1,125 @@
+// A* over the neighbor graph with the Manhattan distance as its heuristic.
+// Every move costs one, so the heuristic is consistent and a node's cost is
+// final the first time it is popped.
+//
+// Several targets from one origin are found in a single search whose
+// heuristic is the Manhattan distance to the box around the targets. That
+// never overstates the distance to any of them and is still consistent, so
+// the search keeps going until every target has been popped once.
+public class AStarPathfinder implements Pathfinder {
+
+    private final NeighborGraph graph;
+    private final SearchSpace space;
+    private final SearchSpace targets;
+    private final NodeHeap open;
+    private final int[] costs;
+
+    // the box around the current search's targets
+    private int minRow;
+    private int minCol;
+    private int maxRow;
+    private int maxCol;
+
+    private long expandedCount;
+
+    public AStarPathfinder(NeighborGraph graph) {
+        this.graph = graph;
+        this.space = new SearchSpace(graph.getNodeCount());
+        this.targets = new SearchSpace(graph.getNodeCount());
+        this.open = new NodeHeap();
+        this.costs = new int[graph.getNodeCount()];
+    }
+
+    @Override
+    public long getExpandedCount() { return expandedCount; }
+
+    private int estimate(int node) {
+
+        int row = graph.getRow(node);
+        int col = graph.getCol(node);
+
+        return Math.max(0, Math.max(minRow - row, row - maxRow))
+             + Math.max(0, Math.max(minCol - col, col - maxCol));
+    }
+
+    @Override
+    public int[] findPath(int from, int to) {
+        return findPaths(from, new int[] { to })[0];
+    }
+
+    @Override
+    public int[][] findPaths(int from, int[] targetNodes) {
+
+        space.reset();
+        targets.reset();
+        open.clear();
+
+        minRow = Integer.MAX_VALUE;
+        minCol = Integer.MAX_VALUE;
+        maxRow = Integer.MIN_VALUE;
+        maxCol = Integer.MIN_VALUE;
+
+        int remaining = 0;
+
+        for (int target : targetNodes) {
+
+            if (targets.isVisited(target)) {
+                continue;
+            }
+
+            targets.visit(target, target);
+            remaining++;
+
+            minRow = Math.min(minRow, graph.getRow(target));
+            minCol = Math.min(minCol, graph.getCol(target));
+            maxRow = Math.max(maxRow, graph.getRow(target));
+            maxCol = Math.max(maxCol, graph.getCol(target));
+        }
+
+        space.visit(from, from);
+        costs[from] = 0;
+
+        int h = estimate(from);
+        open.push(from, h, h);
+
+        while (!open.isEmpty() && remaining > 0) {
+
+            int priority = open.peekPriority();
+            int current = open.pop();
+
+            // superseded by a cheaper entry pushed later
+            if (priority != costs[current] + estimate(current)) {
+                continue;
+            }
+
+            if (targets.isVisited(current) && --remaining == 0) {
+                break;
+            }
+
+            expandedCount++;
+
+            for (int e = graph.getNeighborStart(current); e < graph.getNeighborEnd(current); e++) {
+
+                int neighbor = graph.getNeighbor(e);
+                int cost = costs[current] + 1;
+
+                if (!space.isVisited(neighbor) || cost < costs[neighbor]) {
+
+                    space.visit(neighbor, current);
+                    costs[neighbor] = cost;
+
+                    int estimated = estimate(neighbor);
+                    open.push(neighbor, cost + estimated, estimated);
+                }
+            }
+        }
+
+        int[][] paths = new int[targetNodes.length][];
+
+        for (int i = 0; i < targetNodes.length; i++) {
+            paths[i] = space.tracePath(from, targetNodes[i]);
+        }
+
+        return paths;
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.List;
+import java.util.Date;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.lang.RuntimeException;
+
+// Runs a saved .ntwk map end to end without a display: generates the actor
+// schedules, simulates them and writes every non-zero tile occupancy to disk.
+// Takes the same time parameters as the "Set Time Parameters..." dialog.
+public class BatchRunner {
+
+    private static final String USAGE =
+        "Usage: BatchRunner <map.ntwk> <actors> <seed> <distance unit> <time unit> "
+      + "<actor frequency> <tile scale> <output.csv> [room_table|bfs|a_star|jump_point|hierarchical|nearest_room "
+      + "[tile capacity]]";
+
+    private final File mapFile;
+    private final File outputFile;
+
+    private final int actorCount;
+    private final long seed;
+
+    private final String distanceUnit;
+    private final String timeUnit;
+    private final int actorFrequency;
+    private final int tileScale;
+
+    private final ScheduleGenerator.Routing routing;
+    private final int tileCapacity;
+
+    private long stageStart;
+
+    public static void main(String[] args) {
+
+        BatchRunner runner;
+
+        try {
+            runner = new BatchRunner(args);
+        }
+        catch (IllegalArgumentException ex) {
+            System.err.println("[Error] " + ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            runner.run();
+        }
+        catch (IOException | RuntimeException ex) {
+            System.err.println("[Error] " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public BatchRunner(String[] args) {
+
+        if (args.length < 8 || args.length > 10) {
+            throw new IllegalArgumentException("Expected 8 to 10 arguments, received " + args.length);
+        }
+
+        try {
+            mapFile = new File(args[0]);
+            actorCount = Integer.parseInt(args[1]);
+            seed = Long.parseLong(args[2]);
+            distanceUnit = args[3];
+            timeUnit = args[4];
+            actorFrequency = Integer.parseInt(args[5]);
+            tileScale = Integer.parseInt(args[6]);
+            outputFile = new File(args[7]);
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Actors, seed, frequency and scale must be integers");
+        }
+
+        if (actorCount <= 0) {
+            throw new IllegalArgumentException("Number of actors must be a positive integer");
+        }
+
+        if ("".equals(distanceUnit) || "".equals(timeUnit)) {
+            throw new IllegalArgumentException("Distance and time units cannot be empty.");
+        }
+
+        if (actorFrequency <= 0 || tileScale <= 0) {
+            throw new IllegalArgumentException("Speed and Tile Scale must be positive integers.");
+        }
+
+        try {
+            routing = args.length >= 9
+                ? ScheduleGenerator.Routing.valueOf(args[8].toUpperCase())
+                : ScheduleGenerator.Routing.ROOM_TABLE;
+        }
+        catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown routing " + args[8]);
+        }
+
+        try {
+            tileCapacity = args.length == 10 ? Integer.parseInt(args[9]) : LocationData.AUTO_CAPACITY;
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Tile capacity must be an integer");
+        }
+
+        if (tileCapacity <= 0 && tileCapacity != LocationData.AUTO_CAPACITY) {
+            throw new IllegalArgumentException("Tile capacity must be a positive integer.");
+        }
+    }
+
+    private void startStage() {
+        stageStart = System.nanoTime();
+    }
+
+    private void endStage(String stage) {
+
+        double millis = (System.nanoTime() - stageStart) / 1e6;
+        System.out.printf("[Timing] %-10s %10.1f ms%n", stage, millis);
+    }
+
+    public void run() throws IOException {
+
+        System.out.println("[Info] Batch run of " + mapFile + " started. " + (new Date()).toString());
+
+        startStage();
+        NetworkFile network = NetworkFile.read(mapFile);
+        Grid grid = network.getGrid();
+        endStage("load");
+
+        startStage();
+        boolean isContiguous = grid.isContiguous();
+        endStage("verify");
+
+        if (!isContiguous) {
+            throw new RuntimeException(
+                "Grid is not contiguous. Regions found: " + grid.getComponentCount()
+            );
+        }
+
+        ScheduleGenerator generator = new ScheduleGenerator(grid, seed);
+        generator.setRouting(routing);
+        List<List<Tile>> schedules = generator.getSchedules(actorCount);
+
+        if (schedules.get(0).size() <= 1) {
+            throw new RuntimeException("Grid needs at least two room types to simulate");
+        }
+
+        // schedules are made as the simulation reads them, so their cost is
+        // part of this stage
+        startStage();
+        LocationData locationData = new LocationData(generator, schedules, grid, tileCapacity);
+        endStage("simulate");
+
+        System.out.println(
+            "[Info] Routing " + routing + " expanded " + generator.getExpandedCount() + " nodes"
+        );
+
+        System.out.println(
+            "[Info] Floor tiles hold " + locationData.getTileCapacity() + " actors; "
+          + locationData.getOverCapacityCount() + " moves went over"
+        );
+
+        if (routing == ScheduleGenerator.Routing.HIERARCHICAL) {
+            System.out.println("[Info] Path quality: " + generator.describePathQuality(schedules, 200));
+        }
+
+        startStage();
+        writeOccupancy(network, locationData);
+        endStage("write");
+
+        System.out.println("[Info] Results written to " + outputFile);
+    }
+
+    // one row per (period, step, tile) with at least one actor on it
+    private void writeOccupancy(NetworkFile network, LocationData locationData) throws IOException {
+
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
+
+        writer.println("# simulation: " + network.getSimulationName());
+        writer.println("# actors: " + actorCount + ", seed: " + seed);
+        writer.println(
+            "# actor frequency: " + actorFrequency + " " + timeUnit
+          + " per " + tileScale + " " + distanceUnit
+        );
+        writer.println("# max usage: " + locationData.getMaxUsage());
+        writer.println("period,step,time,row,col,usage");
+
+        // nodes are ranked in row-major order, so each step is read as one
+        // frame and written in the same order as the tiles
+        NeighborGraph graph = locationData.getGraph();
+        int[] usage = new int[graph.getNodeCount()];
+
+        for (int p = 0; p < locationData.getPeriodCount(); p++) {
+            for (int n = 0; n < locationData.getMaxStepAt(p); n++) {
+
+                locationData.copyUsageAt(p, n, usage);
+
+                for (int node = 0; node < usage.length; node++) {
+                    if (usage[node] > 0) {
+                        writer.println(
+                            p + "," + n + "," + (n * actorFrequency) + ","
+                          + graph.getRow(node) + "," + graph.getCol(node) + "," + usage[node]
+                        );
+                    }
+                }
+            }
+        }
+
+        writer.flush();
+        writer.close();
+
+        if (writer.checkError()) {
+            throw new IOException("Failed to write " + outputFile);
+        }
+    }
+}
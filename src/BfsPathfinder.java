@@ -0,0 +1,109 @@
+// Uninformed breadth-first search over the neighbor graph; the reference
+// every other pathfinder is measured against.
+public class BfsPathfinder implements Pathfinder {
+
+    private final NeighborGraph graph;
+    private final SearchSpace space;
+    private final SearchSpace targets;
+    private final int[] queue;
+
+    private long expandedCount;
+
+    public BfsPathfinder(NeighborGraph graph) {
+        this.graph = graph;
+        this.space = new SearchSpace(graph.getNodeCount());
+        this.targets = new SearchSpace(graph.getNodeCount());
+        this.queue = new int[graph.getNodeCount()];
+    }
+
+    @Override
+    public long getExpandedCount() { return expandedCount; }
+
+    @Override
+    public int[] findPath(int from, int to) {
+
+        space.reset();
+
+        int head = 0;
+        int tail = 0;
+
+        queue[tail++] = from;
+        space.visit(from, from);
+
+        while (head != tail) {
+
+            int current = queue[head++];
+
+            if (current == to) {
+                break;
+            }
+
+            expandedCount++;
+
+            for (int e = graph.getNeighborStart(current); e < graph.getNeighborEnd(current); e++) {
+
+                int neighbor = graph.getNeighbor(e);
+
+                if (!space.isVisited(neighbor)) {
+                    space.visit(neighbor, current);
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+
+        return space.tracePath(from, to);
+    }
+
+    // keeps going until the last target is dequeued, then traces every path
+    // back through the same parents
+    @Override
+    public int[][] findPaths(int from, int[] targetNodes) {
+
+        space.reset();
+        targets.reset();
+
+        int remaining = 0;
+
+        for (int target : targetNodes) {
+            if (!targets.isVisited(target)) {
+                targets.visit(target, target);
+                remaining++;
+            }
+        }
+
+        int head = 0;
+        int tail = 0;
+
+        queue[tail++] = from;
+        space.visit(from, from);
+
+        while (head != tail && remaining > 0) {
+
+            int current = queue[head++];
+
+            if (targets.isVisited(current) && --remaining == 0) {
+                break;
+            }
+
+            expandedCount++;
+
+            for (int e = graph.getNeighborStart(current); e < graph.getNeighborEnd(current); e++) {
+
+                int neighbor = graph.getNeighbor(e);
+
+                if (!space.isVisited(neighbor)) {
+                    space.visit(neighbor, current);
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+
+        int[][] paths = new int[targetNodes.length][];
+
+        for (int i = 0; i < targetNodes.length; i++) {
+            paths[i] = space.tracePath(from, targetNodes[i]);
+        }
+
+        return paths;
+    }
+}
@@ -0,0 +1,527 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// The abstract graph used for hierarchical pathfinding.
+//
+// The grid is cut into clusters that line up with its storage chunks. Where
+// two neighboring clusters share a run of open tiles along their border, one
+// or two transitions are placed across it; the tiles on either side of a
+// transition become entrances of their clusters. Entrances of one cluster
+// are joined by their shortest distance inside that cluster, and the two
+// ends of a transition by a single step.
+//
+// Painting a tile only marks its cluster dirty. The next update rebuilds the
+// dirty clusters' borders, and searches inside any cluster whose entrances
+// changed as a result, before the abstract graph is put back together.
+public class ClusterGraph {
+
+    // clusters are numbered like the grid's chunks, so a cluster can read
+    // its chunk's row masks directly
+    public static final int CLUSTER_SIZE = Grid.CHUNK_SIZE;
+
+    // runs of open border at least this long get a transition at both ends
+    private static final int SPLIT_RUN = 6;
+
+    private final Grid grid;
+
+    private final int clusterColumns;
+    private final int clusterRows;
+
+    // tile pairs (inside, outside) across each cluster's right and bottom border
+    private final int[][] rightTransitions;
+    private final int[][] downTransitions;
+
+    // sorted entrance tiles of each cluster and the distances between them
+    private final int[][] entrances;
+    private final int[][] entranceDistances;
+
+    private final BitSet dirty;
+
+    // global node id = clusterStarts[cluster] + position in entrances[cluster]
+    private int[] clusterStarts;
+    private int[] nodeTiles;
+    private int[] edgeStarts;
+    private int[] edgeTargets;
+    private int[] edgeCosts;
+
+    private long rebuiltClusterCount;
+
+    public ClusterGraph(Grid grid) {
+
+        this.grid = grid;
+
+        this.clusterColumns = (grid.getWidth() + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+        this.clusterRows = (grid.getHeight() + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+
+        int clusterCount = clusterColumns * clusterRows;
+
+        this.rightTransitions = new int[clusterCount][];
+        this.downTransitions = new int[clusterCount][];
+        this.entrances = new int[clusterCount][];
+        this.entranceDistances = new int[clusterCount][];
+
+        this.dirty = new BitSet(clusterCount);
+        this.dirty.set(0, clusterCount);
+    }
+
+    public int getClusterCount() { return clusterColumns * clusterRows; }
+
+    // clusters rebuilt over the graph's lifetime, including the first build
+    public long getRebuiltClusterCount() { return rebuiltClusterCount; }
+
+    public int getClusterOf(int tileIndex) {
+
+        int row = grid.getRowOf(tileIndex);
+        int col = grid.getColOf(tileIndex);
+
+        return (row / CLUSTER_SIZE) * clusterColumns + col / CLUSTER_SIZE;
+    }
+
+    public int getFirstRow(int cluster) { return (cluster / clusterColumns) * CLUSTER_SIZE; }
+    public int getFirstCol(int cluster) { return (cluster % clusterColumns) * CLUSTER_SIZE; }
+
+    public int getLocalIndex(int cluster, int tileIndex) {
+
+        int row = grid.getRowOf(tileIndex) - getFirstRow(cluster);
+        int col = grid.getColOf(tileIndex) - getFirstCol(cluster);
+
+        return row * CLUSTER_SIZE + col;
+    }
+
+    public int getTileIndex(int cluster, int localIndex) {
+
+        int row = getFirstRow(cluster) + localIndex / CLUSTER_SIZE;
+        int col = getFirstCol(cluster) + localIndex % CLUSTER_SIZE;
+
+        return grid.getIndexOf(row, col);
+    }
+
+    public int getNodeCount()               { return nodeTiles.length;           }
+    public int getNodeTile(int node)        { return nodeTiles[node];            }
+    public int getClusterStart(int cluster) { return clusterStarts[cluster];     }
+    public int getClusterEnd(int cluster)   { return clusterStarts[cluster + 1]; }
+    public int getEdgeStart(int node)       { return edgeStarts[node];           }
+    public int getEdgeEnd(int node)         { return edgeStarts[node + 1];       }
+    public int getEdgeTarget(int edge)      { return edgeTargets[edge];          }
+    public int getEdgeCost(int edge)        { return edgeCosts[edge];            }
+
+    public void tileChanged(int row, int col) {
+        dirty.set((row / CLUSTER_SIZE) * clusterColumns + col / CLUSTER_SIZE);
+    }
+
+    public boolean isDirty() { return !dirty.isEmpty(); }
+
+    public void update() {
+
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        BitSet stale = new BitSet(getClusterCount());
+
+        for (int c = dirty.nextSetBit(0); c >= 0; c = dirty.nextSetBit(c + 1)) {
+
+            stale.set(c);
+
+            int left = c % clusterColumns > 0 ? c - 1 : -1;
+            int up = c >= clusterColumns ? c - clusterColumns : -1;
+
+            // a border belongs to the cluster on its left or top
+            if (rebuildBorder(c, true) && c % clusterColumns + 1 < clusterColumns) {
+                stale.set(c + 1);
+            }
+
+            if (rebuildBorder(c, false) && c + clusterColumns < getClusterCount()) {
+                stale.set(c + clusterColumns);
+            }
+
+            if (left >= 0 && rebuildBorder(left, true)) {
+                stale.set(left);
+            }
+
+            if (up >= 0 && rebuildBorder(up, false)) {
+                stale.set(up);
+            }
+        }
+
+        dirty.clear();
+
+        stale.stream().parallel().forEach(this::rebuildCluster);
+        rebuiltClusterCount += stale.cardinality();
+
+        assemble();
+    }
+
+    private boolean isOpen(int row, int col) {
+        return grid.isTraversableAt(row, col);
+    }
+
+    // returns whether the border's transitions changed
+    private boolean rebuildBorder(int cluster, boolean isRight) {
+
+        int[] pairs = new int[4 * CLUSTER_SIZE];
+        int pairCount = 0;
+
+        int firstRow = getFirstRow(cluster);
+        int firstCol = getFirstCol(cluster);
+
+        int lineRow = firstRow + CLUSTER_SIZE - 1;
+        int lineCol = firstCol + CLUSTER_SIZE - 1;
+
+        int length = isRight
+            ? Math.min(CLUSTER_SIZE, grid.getHeight() - firstRow)
+            : Math.min(CLUSTER_SIZE, grid.getWidth() - firstCol);
+
+        boolean hasNeighbor = isRight ? lineCol + 1 < grid.getWidth() : lineRow + 1 < grid.getHeight();
+        int runStart = -1;
+
+        for (int i = 0; hasNeighbor && i <= length; i++) {
+
+            int row = isRight ? firstRow + i : lineRow;
+            int col = isRight ? lineCol : firstCol + i;
+
+            boolean isCrossable = i < length && isOpen(row, col)
+                && (isRight ? isOpen(row, col + 1) : isOpen(row + 1, col));
+
+            if (isCrossable && runStart < 0) {
+                runStart = i;
+            }
+
+            if (isCrossable || runStart < 0) {
+                continue;
+            }
+
+            int runLength = i - runStart;
+            int[] positions = runLength >= SPLIT_RUN
+                ? new int[] { runStart, i - 1 }
+                : new int[] { runStart + runLength / 2 };
+
+            for (int position : positions) {
+
+                int insideRow = isRight ? firstRow + position : lineRow;
+                int insideCol = isRight ? lineCol : firstCol + position;
+
+                pairs[pairCount++] = grid.getIndexOf(insideRow, insideCol);
+                pairs[pairCount++] = isRight
+                    ? grid.getIndexOf(insideRow, insideCol + 1)
+                    : grid.getIndexOf(insideRow + 1, insideCol);
+            }
+
+            runStart = -1;
+        }
+
+        int[][] transitions = isRight ? rightTransitions : downTransitions;
+        int[] updated = Arrays.copyOf(pairs, pairCount);
+
+        if (Arrays.equals(transitions[cluster], updated)) {
+            return false;
+        }
+
+        transitions[cluster] = updated;
+        return true;
+    }
+
+    private void rebuildCluster(int cluster) {
+
+        int[] tiles = new int[8 * CLUSTER_SIZE];
+        int tileCount = 0;
+
+        int left = cluster % clusterColumns > 0 ? cluster - 1 : -1;
+        int up = cluster >= clusterColumns ? cluster - clusterColumns : -1;
+
+        tileCount = addEnds(rightTransitions[cluster], 0, tiles, tileCount);
+        tileCount = addEnds(downTransitions[cluster], 0, tiles, tileCount);
+
+        if (left >= 0) {
+            tileCount = addEnds(rightTransitions[left], 1, tiles, tileCount);
+        }
+
+        if (up >= 0) {
+            tileCount = addEnds(downTransitions[up], 1, tiles, tileCount);
+        }
+
+        // a corner tile can sit on two borders
+        int[] sorted = Arrays.stream(tiles, 0, tileCount).sorted().distinct().toArray();
+        int[] locals = new int[sorted.length];
+
+        for (int i = 0; i < sorted.length; i++) {
+            locals[i] = getLocalIndex(cluster, sorted[i]);
+        }
+
+        int rows = Math.min(CLUSTER_SIZE, grid.getHeight() - getFirstRow(cluster));
+        long[] open = new long[rows];
+
+        for (int r = 0; r < rows; r++) {
+            open[r] = grid.getValidMaskOf(cluster, r);
+        }
+
+        int[] distances = new int[sorted.length * sorted.length];
+        Arrays.fill(distances, -1);
+
+        for (int i = 0; i < sorted.length; i++) {
+            measureEntrances(open, locals, i, distances);
+        }
+
+        entrances[cluster] = sorted;
+        entranceDistances[cluster] = distances;
+    }
+
+    // distances from entrance i to every later entrance, which also gives the
+    // earlier ones their distance back to i; stops once all of them are found
+    private static void measureEntrances(long[] open, int[] locals, int i, int[] distances) {
+
+        int k = locals.length;
+        int rows = open.length;
+
+        long[] targets = new long[rows];
+        int remaining = 0;
+
+        for (int j = i + 1; j < k; j++) {
+            targets[locals[j] / CLUSTER_SIZE] |= 1L << (locals[j] % CLUSTER_SIZE);
+            remaining++;
+        }
+
+        distances[i * k + i] = 0;
+
+        long[] reached = new long[rows];
+        long[] frontier = new long[rows];
+        long[] next = new long[rows];
+
+        frontier[locals[i] / CLUSTER_SIZE] = 1L << (locals[i] % CLUSTER_SIZE);
+        reached[locals[i] / CLUSTER_SIZE] = frontier[locals[i] / CLUSTER_SIZE];
+
+        for (int distance = 1; remaining > 0; distance++) {
+
+            boolean isGrowing = false;
+
+            for (int r = 0; r < rows; r++) {
+
+                long grown = (frontier[r] << 1) | (frontier[r] >>> 1)
+                    | (r > 0 ? frontier[r - 1] : 0)
+                    | (r + 1 < rows ? frontier[r + 1] : 0);
+
+                next[r] = grown & open[r] & ~reached[r];
+                isGrowing |= next[r] != 0;
+            }
+
+            if (!isGrowing) {
+                return;
+            }
+
+            for (int r = 0; r < rows; r++) {
+
+                reached[r] |= next[r];
+
+                for (long hits = next[r] & targets[r]; hits != 0; hits &= hits - 1) {
+
+                    int j = Arrays.binarySearch(locals, r * CLUSTER_SIZE + Long.numberOfTrailingZeros(hits));
+
+                    distances[i * k + j] = distance;
+                    distances[j * k + i] = distance;
+                    remaining--;
+                }
+            }
+
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+        }
+    }
+
+    private static int addEnds(int[] pairs, int side, int[] tiles, int tileCount) {
+
+        if (pairs == null) {
+            return tileCount;
+        }
+
+        for (int i = side; i < pairs.length; i += 2) {
+            tiles[tileCount++] = pairs[i];
+        }
+
+        return tileCount;
+    }
+
+    // breadth-first search from a tile that never leaves its cluster, run a
+    // whole wavefront at a time on the chunk's row masks; fills distances by
+    // local index, -1 where unreachable
+    public void search(int cluster, int fromTile, int[] distances) {
+
+        Arrays.fill(distances, -1);
+
+        int rows = Math.min(CLUSTER_SIZE, grid.getHeight() - getFirstRow(cluster));
+
+        long[] open = new long[rows];
+        long[] reached = new long[rows];
+        long[] frontier = new long[rows];
+        long[] next = new long[rows];
+
+        for (int r = 0; r < rows; r++) {
+            open[r] = grid.getValidMaskOf(cluster, r);
+        }
+
+        int start = getLocalIndex(cluster, fromTile);
+
+        frontier[start / CLUSTER_SIZE] = 1L << (start % CLUSTER_SIZE);
+        reached[start / CLUSTER_SIZE] = frontier[start / CLUSTER_SIZE];
+        distances[start] = 0;
+
+        for (int distance = 1; ; distance++) {
+
+            boolean isGrowing = false;
+
+            for (int r = 0; r < rows; r++) {
+
+                long grown = (frontier[r] << 1) | (frontier[r] >>> 1)
+                    | (r > 0 ? frontier[r - 1] : 0)
+                    | (r + 1 < rows ? frontier[r + 1] : 0);
+
+                next[r] = grown & open[r] & ~reached[r];
+                isGrowing |= next[r] != 0;
+            }
+
+            if (!isGrowing) {
+                return;
+            }
+
+            for (int r = 0; r < rows; r++) {
+
+                reached[r] |= next[r];
+
+                for (long bits = next[r]; bits != 0; bits &= bits - 1) {
+                    distances[r * CLUSTER_SIZE + Long.numberOfTrailingZeros(bits)] = distance;
+                }
+            }
+
+            long[] swap = frontier;
+            frontier = next;
+            next = swap;
+        }
+    }
+
+    // one step back toward the search's start from a reached local index,
+    // trying up, down, left and right in that order
+    public int stepBack(int[] distances, int localIndex) {
+
+        int row = localIndex / CLUSTER_SIZE;
+        int col = localIndex % CLUSTER_SIZE;
+        int wanted = distances[localIndex] - 1;
+
+        if (row > 0 && distances[localIndex - CLUSTER_SIZE] == wanted) {
+            return localIndex - CLUSTER_SIZE;
+        }
+
+        if (row + 1 < CLUSTER_SIZE && distances[localIndex + CLUSTER_SIZE] == wanted) {
+            return localIndex + CLUSTER_SIZE;
+        }
+
+        if (col > 0 && distances[localIndex - 1] == wanted) {
+            return localIndex - 1;
+        }
+
+        return localIndex + 1;
+    }
+
+    private void assemble() {
+
+        int clusterCount = getClusterCount();
+
+        clusterStarts = new int[clusterCount + 1];
+
+        for (int c = 0; c < clusterCount; c++) {
+            clusterStarts[c + 1] = clusterStarts[c] + entrances[c].length;
+        }
+
+        int nodeCount = clusterStarts[clusterCount];
+
+        nodeTiles = new int[nodeCount];
+        int[] degrees = new int[nodeCount];
+
+        for (int c = 0; c < clusterCount; c++) {
+
+            int k = entrances[c].length;
+            System.arraycopy(entrances[c], 0, nodeTiles, clusterStarts[c], k);
+
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    if (i != j && entranceDistances[c][i * k + j] >= 0) {
+                        degrees[clusterStarts[c] + i]++;
+                    }
+                }
+            }
+        }
+
+        forEachTransition((inside, outside) -> {
+            degrees[inside]++;
+            degrees[outside]++;
+        });
+
+        edgeStarts = new int[nodeCount + 1];
+
+        for (int n = 0; n < nodeCount; n++) {
+            edgeStarts[n + 1] = edgeStarts[n] + degrees[n];
+        }
+
+        edgeTargets = new int[edgeStarts[nodeCount]];
+        edgeCosts = new int[edgeStarts[nodeCount]];
+
+        int[] next = Arrays.copyOf(edgeStarts, nodeCount);
+
+        for (int c = 0; c < clusterCount; c++) {
+
+            int k = entrances[c].length;
+
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+
+                    int distance = entranceDistances[c][i * k + j];
+
+                    if (i != j && distance >= 0) {
+                        int edge = next[clusterStarts[c] + i]++;
+                        edgeTargets[edge] = clusterStarts[c] + j;
+                        edgeCosts[edge] = distance;
+                    }
+                }
+            }
+        }
+
+        forEachTransition((inside, outside) -> {
+
+            int edge = next[inside]++;
+            edgeTargets[edge] = outside;
+            edgeCosts[edge] = 1;
+
+            edge = next[outside]++;
+            edgeTargets[edge] = inside;
+            edgeCosts[edge] = 1;
+        });
+    }
+
+    private interface TransitionVisitor {
+        void visit(int insideNode, int outsideNode);
+    }
+
+    private void forEachTransition(TransitionVisitor visitor) {
+
+        for (int c = 0; c < getClusterCount(); c++) {
+
+            int[][] borders = { rightTransitions[c], downTransitions[c] };
+            int[] neighbors = { c + 1, c + clusterColumns };
+
+            for (int b = 0; b < 2; b++) {
+
+                int[] pairs = borders[b];
+
+                for (int i = 0; pairs != null && i < pairs.length; i += 2) {
+                    visitor.visit(getNode(c, pairs[i]), getNode(neighbors[b], pairs[i + 1]));
+                }
+            }
+        }
+    }
+
+    // -1 when the tile is not an entrance of the cluster
+    public int getNode(int cluster, int tileIndex) {
+
+        int position = Arrays.binarySearch(entrances[cluster], tileIndex);
+        return position < 0 ? -1 : clusterStarts[cluster] + position;
+    }
+}
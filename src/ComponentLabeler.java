@@ -0,0 +1,329 @@
+import java.util.Arrays;
+
+import java.util.stream.IntStream;
+
+// Labels the connected regions of a grid in parallel.
+//
+// Work is done over the grid's neighbor graph, whose node ids are the ranks
+// of the traversable tiles in row-major order, so memory follows the walkable
+// area rather than the bounding box. The rows are cut into horizontal
+// stripes, each a contiguous range of nodes. Each stripe is labeled on its
+// own with union-find, always linking the larger root under the smaller one,
+// so every region's root ends up being its first tile in row-major order no
+// matter how the work was split. The stripe borders are then merged in one
+// sequential pass, and a final parallel pass assigns compact ids and gathers
+// region sizes and bounding boxes.
+public class ComponentLabeler {
+
+    private static final int MIN_ROWS_PER_STRIPE = 16;
+
+    // per region crossing a stripe border: size, min row, min col, max row, max col
+    private static final int STAT_COUNT = 5;
+
+    private final NeighborGraph graph;
+    private final int width;
+    private final int height;
+
+    private final int stripeCount;
+    private final int rowsPerStripe;
+
+    // stripe s holds nodes [stripeStarts[s], stripeStarts[s + 1])
+    private final int[] stripeStarts;
+
+    private final int[] parents;
+    private final int[] labels;
+
+    public static ComponentReport label(Grid grid) {
+        return label(grid, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public static ComponentReport label(Grid grid, int stripes) {
+        return new ComponentLabeler(grid, stripes).run();
+    }
+
+    private ComponentLabeler(Grid grid, int stripes) {
+
+        this.graph = grid.getNeighborGraph();
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+
+        int maxStripes = Math.max(1, height / MIN_ROWS_PER_STRIPE);
+        int requested = Math.max(1, Math.min(stripes, maxStripes));
+
+        this.rowsPerStripe = (height + requested - 1) / requested;
+        this.stripeCount = (height + rowsPerStripe - 1) / rowsPerStripe;
+
+        this.stripeStarts = new int[stripeCount + 1];
+
+        for (int s = 0; s <= stripeCount; s++) {
+            stripeStarts[s] = firstNodeFrom(Math.min(height, s * rowsPerStripe) * width);
+        }
+
+        this.parents = new int[graph.getNodeCount()];
+        this.labels = new int[graph.getNodeCount()];
+    }
+
+    // the first node whose tile index is at least tileIndex
+    private int firstNodeFrom(int tileIndex) {
+
+        int low = 0;
+        int high = graph.getNodeCount();
+
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+
+            if (graph.getTileIndex(mid) < tileIndex) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private int find(int node) {
+
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+
+        return node;
+    }
+
+    private void union(int lhs, int rhs) {
+
+        int lhsRoot = find(lhs);
+        int rhsRoot = find(rhs);
+
+        if (lhsRoot < rhsRoot) {
+            parents[rhsRoot] = lhsRoot;
+        }
+        else if (rhsRoot < lhsRoot) {
+            parents[lhsRoot] = rhsRoot;
+        }
+    }
+
+    // only touches nodes inside the stripe, so stripes can run concurrently;
+    // the up and left neighbors are the ones ranked lower
+    private void labelStripe(int stripe) {
+
+        int first = stripeStarts[stripe];
+
+        for (int node = first; node < stripeStarts[stripe + 1]; node++) {
+
+            parents[node] = node;
+
+            for (int e = graph.getNeighborStart(node); e < graph.getNeighborEnd(node); e++) {
+
+                int neighbor = graph.getNeighbor(e);
+
+                if (neighbor >= first && neighbor < node) {
+                    union(node, neighbor);
+                }
+            }
+        }
+    }
+
+    // the nodes of a stripe's first row that have a neighbor in the stripe above
+    private void mergeBorders() {
+
+        for (int stripe = 1; stripe < stripeCount; stripe++) {
+
+            int first = stripeStarts[stripe];
+
+            for (int node = first; node < stripeStarts[stripe + 1] && isInFirstRow(stripe, node); node++) {
+                for (int e = graph.getNeighborStart(node); e < graph.getNeighborEnd(node); e++) {
+                    if (graph.getNeighbor(e) < first) {
+                        union(node, graph.getNeighbor(e));
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean hasNeighborBefore(int node, int bound) {
+
+        for (int e = graph.getNeighborStart(node); e < graph.getNeighborEnd(node); e++) {
+            if (graph.getNeighbor(e) < bound) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isInFirstRow(int stripe, int node) {
+        return graph.getTileIndex(node) < (stripe * rowsPerStripe + 1) * width;
+    }
+
+    // stores every node's root in labels without compressing, so it is safe
+    // to run across stripes at once; returns how many roots the stripe holds
+    private int resolveRoots(int stripe) {
+
+        int roots = 0;
+
+        for (int node = stripeStarts[stripe]; node < stripeStarts[stripe + 1]; node++) {
+
+            int root = node;
+
+            while (parents[root] != root) {
+                root = parents[root];
+            }
+
+            labels[node] = root;
+            roots += root == node ? 1 : 0;
+        }
+
+        return roots;
+    }
+
+    // parents is no longer needed as a forest, so each root's slot is reused
+    // to hold its compact component id
+    private void numberRoots(int stripe, int firstId) {
+
+        int id = firstId;
+
+        for (int node = stripeStarts[stripe]; node < stripeStarts[stripe + 1]; node++) {
+            if (labels[node] == node) {
+                parents[node] = id++;
+            }
+        }
+    }
+
+    private ComponentReport run() {
+
+        IntStream.range(0, stripeCount).parallel().forEach(this::labelStripe);
+        mergeBorders();
+
+        int[] rootCounts = new int[stripeCount];
+        IntStream.range(0, stripeCount).parallel().forEach(s -> rootCounts[s] = resolveRoots(s));
+
+        int[] firstIds = new int[stripeCount];
+        int componentCount = 0;
+
+        for (int s = 0; s < stripeCount; s++) {
+            firstIds[s] = componentCount;
+            componentCount += rootCounts[s];
+        }
+
+        IntStream.range(0, stripeCount).parallel().forEach(s -> numberRoots(s, firstIds[s]));
+
+        // a region that crosses a stripe border is counted by several stripes,
+        // so those regions get a slot in per-stripe stats merged afterwards;
+        // only a node with an edge into the stripe above can mark one
+        int[] spanningSlots = new int[componentCount];
+        int spanningCount = 0;
+
+        Arrays.fill(spanningSlots, -1);
+
+        for (int stripe = 1; stripe < stripeCount; stripe++) {
+
+            int first = stripeStarts[stripe];
+
+            for (int node = first; node < stripeStarts[stripe + 1] && isInFirstRow(stripe, node); node++) {
+
+                int id = parents[labels[node]];
+
+                if (spanningSlots[id] < 0 && hasNeighborBefore(node, first)) {
+                    spanningSlots[id] = spanningCount++;
+                }
+            }
+        }
+
+        int[] sizes = new int[componentCount];
+        int[] minRows = new int[componentCount];
+        int[] minCols = new int[componentCount];
+        int[] maxRows = new int[componentCount];
+        int[] maxCols = new int[componentCount];
+
+        Arrays.fill(minRows, Integer.MAX_VALUE);
+        Arrays.fill(minCols, Integer.MAX_VALUE);
+        Arrays.fill(maxRows, -1);
+        Arrays.fill(maxCols, -1);
+
+        int[][] spanningStats = new int[stripeCount][];
+        int slotCount = spanningCount;
+
+        IntStream.range(0, stripeCount).parallel().forEach(stripe -> {
+
+            int[] local = null;
+
+            for (int node = stripeStarts[stripe]; node < stripeStarts[stripe + 1]; node++) {
+
+                int id = parents[labels[node]];
+                int r = graph.getRow(node);
+                int c = graph.getCol(node);
+
+                labels[node] = id;
+
+                int slot = spanningSlots[id];
+
+                if (slot >= 0) {
+
+                    if (local == null) {
+                        local = newStats(slotCount);
+                    }
+
+                    int at = slot * STAT_COUNT;
+
+                    local[at]++;
+                    local[at + 1] = Math.min(local[at + 1], r);
+                    local[at + 2] = Math.min(local[at + 2], c);
+                    local[at + 3] = Math.max(local[at + 3], r);
+                    local[at + 4] = Math.max(local[at + 4], c);
+                }
+                else {
+                    sizes[id]++;
+                    minRows[id] = Math.min(minRows[id], r);
+                    minCols[id] = Math.min(minCols[id], c);
+                    maxRows[id] = Math.max(maxRows[id], r);
+                    maxCols[id] = Math.max(maxCols[id], c);
+                }
+            }
+
+            spanningStats[stripe] = local;
+        });
+
+        for (int id = 0; id < componentCount; id++) {
+
+            if (spanningSlots[id] < 0) {
+                continue;
+            }
+
+            int at = spanningSlots[id] * STAT_COUNT;
+
+            for (int[] local : spanningStats) {
+
+                if (local == null) {
+                    continue;
+                }
+
+                sizes[id] += local[at];
+                minRows[id] = Math.min(minRows[id], local[at + 1]);
+                minCols[id] = Math.min(minCols[id], local[at + 2]);
+                maxRows[id] = Math.max(maxRows[id], local[at + 3]);
+                maxCols[id] = Math.max(maxCols[id], local[at + 4]);
+            }
+        }
+
+        return new ComponentReport(graph, labels, sizes, minRows, minCols, maxRows, maxCols);
+    }
+
+    private static int[] newStats(int slotCount) {
+
+        int[] stats = new int[slotCount * STAT_COUNT];
+
+        for (int at = 0; at < stats.length; at += STAT_COUNT) {
+            stats[at + 1] = Integer.MAX_VALUE;
+            stats[at + 2] = Integer.MAX_VALUE;
+            stats[at + 3] = -1;
+            stats[at + 4] = -1;
+        }
+
+        return stats;
+    }
+}
@@ -0,0 +1,66 @@
+// Result of labeling the connected regions of a grid: a component id for
+// every node of the grid's neighbor graph plus the size and bounding box of
+// each region. Walls read as -1. Component ids are numbered in row-major
+// order of each region's first tile.
+public class ComponentReport {
+
+    private final NeighborGraph graph;
+    private final int[] labels;
+
+    private final int[] sizes;
+    private final int[] minRows;
+    private final int[] minCols;
+    private final int[] maxRows;
+    private final int[] maxCols;
+
+    public ComponentReport(NeighborGraph graph,
+                           int[] labels,
+                           int[] sizes,
+                           int[] minRows,
+                           int[] minCols,
+                           int[] maxRows,
+                           int[] maxCols) {
+
+        this.graph = graph;
+        this.labels = labels;
+        this.sizes = sizes;
+        this.minRows = minRows;
+        this.minCols = minCols;
+        this.maxRows = maxRows;
+        this.maxCols = maxCols;
+    }
+
+    public int getComponentCount() { return sizes.length; }
+
+    public int getLabelAt(int row, int col) {
+
+        int node = graph.getNode(row, col);
+        return node < 0 ? -1 : labels[node];
+    }
+
+    public int getSize(int component)   { return sizes[component];   }
+    public int getMinRow(int component) { return minRows[component]; }
+    public int getMinCol(int component) { return minCols[component]; }
+    public int getMaxRow(int component) { return maxRows[component]; }
+    public int getMaxCol(int component) { return maxCols[component]; }
+
+    public int getLargestComponent() {
+
+        int largest = -1;
+
+        for (int i = 0; i < sizes.length; i++) {
+            if (largest == -1 || sizes[i] > sizes[largest]) {
+                largest = i;
+            }
+        }
+
+        return largest;
+    }
+
+    public String describe(int component) {
+
+        return "Region " + component + ": " + sizes[component] + " tiles, "
+             + "(" + minRows[component] + ", " + minCols[component] + ") to "
+             + "(" + maxRows[component] + ", " + maxCols[component] + ")";
+    }
+}
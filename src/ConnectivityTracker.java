@@ -0,0 +1,214 @@
+import java.util.Arrays;
+
+// Keeps the number of connected regions of a grid up to date as tiles are
+// painted, so contiguity can be answered without a traversal.
+//
+// Additions are merged with union-find. Union-find cannot split, so every
+// tile that turns on is given a fresh node and a removed tile's old node is
+// simply left behind inside its set. A removal whose remaining neighbors are
+// still joined around the removed tile cannot disconnect anything; any other
+// removal marks the count as stale and it is recomputed on the next query.
+public class ConnectivityTracker {
+
+    private static final int[] RING_ROWS = { -1, -1,  0,  1,  1,  1,  0, -1 };
+    private static final int[] RING_COLS = {  0,  1,  1,  1,  0, -1, -1, -1 };
+
+    private final Grid grid;
+
+    // node + 1 for every traversable tile, 0 for walls; stored in the grid's
+    // chunk layout so all-wall areas cost nothing
+    private int[][] nodeChunks;
+    private int[] parents;
+    private int nodeCount;
+
+    private int tileCount;
+    private int componentCount;
+    private boolean isStale;
+
+    public ConnectivityTracker(Grid grid) {
+
+        this.grid = grid;
+        this.nodeChunks = new int[grid.getChunkCount()][];
+        this.parents = new int[16];
+    }
+
+    private int find(int node) {
+
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+
+        return node;
+    }
+
+    private boolean union(int lhs, int rhs) {
+
+        int lhsRoot = find(lhs);
+        int rhsRoot = find(rhs);
+
+        if (lhsRoot == rhsRoot) {
+            return false;
+        }
+
+        parents[lhsRoot] = rhsRoot;
+        return true;
+    }
+
+    private int createNode() {
+
+        if (nodeCount == parents.length) {
+            parents = Arrays.copyOf(parents, parents.length * 2);
+        }
+
+        parents[nodeCount] = nodeCount;
+        return nodeCount++;
+    }
+
+    private int getNodeAt(int row, int col) {
+
+        int[] chunk = nodeChunks[grid.getChunkOf(row, col)];
+        return chunk == null ? -1 : chunk[grid.getOffsetInChunk(row, col)] - 1;
+    }
+
+    private void setNodeAt(int row, int col, int node) {
+
+        int chunkIndex = grid.getChunkOf(row, col);
+
+        if (nodeChunks[chunkIndex] == null) {
+            nodeChunks[chunkIndex] = new int[Grid.CHUNK_SIZE * Grid.CHUNK_SIZE];
+        }
+
+        nodeChunks[chunkIndex][grid.getOffsetInChunk(row, col)] = node + 1;
+    }
+
+    public void tileTurnedOn(int row, int col) {
+
+        tileCount++;
+
+        // removed nodes pile up until the next rebuild; cap them at the tile count
+        if (isStale || nodeCount > 2 * tileCount + 64) {
+            isStale = true;
+            return;
+        }
+
+        int node = createNode();
+        setNodeAt(row, col, node);
+        componentCount++;
+
+        for (int i = 0; i < 8; i += 2) {
+
+            int r = row + RING_ROWS[i];
+            int c = col + RING_COLS[i];
+
+            if (grid.isTraversableAt(r, c) && union(node, getNodeAt(r, c))) {
+                componentCount--;
+            }
+        }
+    }
+
+    public void tileTurnedOff(int row, int col) {
+
+        tileCount--;
+
+        if (isStale) {
+            return;
+        }
+
+        setNodeAt(row, col, -1);
+
+        boolean[] isOpen = new boolean[8];
+        int openNeighbors = 0;
+        int closedPosition = -1;
+
+        for (int i = 0; i < 8; i++) {
+
+            isOpen[i] = grid.isTraversableAt(row + RING_ROWS[i], col + RING_COLS[i]);
+
+            if (isOpen[i] && i % 2 == 0) {
+                openNeighbors++;
+            }
+
+            if (!isOpen[i]) {
+                closedPosition = i;
+            }
+        }
+
+        if (openNeighbors == 0) {
+            componentCount--;
+            return;
+        }
+
+        if (openNeighbors == 1 || closedPosition == -1) {
+            return;
+        }
+
+        // consecutive ring positions are 4-adjacent, so each run of open ring
+        // tiles is connected; if every open neighbor shares one run, no split
+        int runsWithNeighbors = 0;
+        boolean isInRun = false;
+        boolean runHasNeighbor = false;
+
+        for (int k = 1; k <= 8; k++) {
+
+            int i = (closedPosition + k) % 8;
+
+            if (isOpen[i]) {
+                isInRun = true;
+                runHasNeighbor |= i % 2 == 0;
+            }
+            else if (isInRun) {
+                runsWithNeighbors += runHasNeighbor ? 1 : 0;
+                isInRun = false;
+                runHasNeighbor = false;
+            }
+        }
+
+        if (runsWithNeighbors > 1) {
+            isStale = true;
+        }
+    }
+
+    private void rebuild() {
+
+        nodeChunks = new int[grid.getChunkCount()][];
+        parents = new int[Math.max(16, tileCount)];
+        nodeCount = 0;
+        componentCount = 0;
+
+        for (int i = grid.nextValidIndex(0); i >= 0; i = grid.nextValidIndex(i + 1)) {
+
+            int r = grid.getRowOf(i);
+            int c = grid.getColOf(i);
+
+            int node = createNode();
+            setNodeAt(r, c, node);
+            componentCount++;
+
+            if (grid.isTraversableAt(r - 1, c) && union(node, getNodeAt(r - 1, c))) {
+                componentCount--;
+            }
+
+            if (grid.isTraversableAt(r, c - 1) && union(node, getNodeAt(r, c - 1))) {
+                componentCount--;
+            }
+        }
+
+        isStale = false;
+    }
+
+    public int getComponentCount() {
+
+        if (isStale) {
+            rebuild();
+        }
+
+        return componentCount;
+    }
+
+    public int getTileCount() { return tileCount; }
+
+    public boolean isContiguous() {
+        return getComponentCount() == 1;
+    }
+}
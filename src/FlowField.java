@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+// Routes from every tile to the nearest of a set of source tiles, built with
+// one multi-source BFS.
+//
+// Each node keeps its BFS distance to the nearest source and a next hop
+// toward it, packed two bits per node the same way RoomRouteTable does, so
+// walking from any tile to its nearest source costs only the steps taken.
+// A field is an immutable snapshot of the graph it was built on.
+public class FlowField {
+
+    private final NeighborGraph graph;
+
+    private final int[] distances;
+    private final byte[] nextHops;
+
+    private final int sourceCount;
+
+    public FlowField(NeighborGraph graph, int[] sources) {
+
+        int nodeCount = graph.getNodeCount();
+
+        this.graph = graph;
+        this.distances = new int[nodeCount];
+        this.nextHops = new byte[(nodeCount + 3) >> 2];
+
+        Arrays.fill(distances, -1);
+
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+
+        for (int source : sources) {
+            if (distances[source] < 0) {
+                distances[source] = 0;
+                queue[tail++] = source;
+            }
+        }
+
+        this.sourceCount = tail;
+
+        while (head != tail) {
+
+            int current = queue[head++];
+
+            for (int e = graph.getNeighborStart(current); e < graph.getNeighborEnd(current); e++) {
+
+                int neighbor = graph.getNeighbor(e);
+
+                if (distances[neighbor] >= 0) {
+                    continue;
+                }
+
+                distances[neighbor] = distances[current] + 1;
+                queue[tail++] = neighbor;
+
+                // the neighbor steps back to current on its way to a source
+                int start = graph.getNeighborStart(neighbor);
+                int hop = 0;
+
+                while (graph.getNeighbor(start + hop) != current) {
+                    hop++;
+                }
+
+                nextHops[neighbor >> 2] |= hop << ((neighbor & 3) << 1);
+            }
+        }
+    }
+
+    public NeighborGraph getGraph() { return graph;       }
+    public int getSourceCount()     { return sourceCount; }
+
+    // -1 when no source can be reached
+    public int getDistance(int node) { return distances[node]; }
+
+    private int getNextNode(int node) {
+
+        int hop = (nextHops[node >> 2] >> ((node & 3) << 1)) & 3;
+        return graph.getNeighbor(graph.getNeighborStart(node) + hop);
+    }
+
+    // the source a walk from node ends at
+    public int getNearest(int node) {
+
+        checkReachable(node);
+
+        for (int steps = distances[node]; steps > 0; steps--) {
+            node = getNextNode(node);
+        }
+
+        return node;
+    }
+
+    // from node to its nearest source, both included
+    public int[] findPath(int node) {
+
+        checkReachable(node);
+
+        int[] path = new int[distances[node] + 1];
+        path[0] = node;
+
+        for (int i = 1; i < path.length; i++) {
+            path[i] = getNextNode(path[i - 1]);
+        }
+
+        return path;
+    }
+
+    private void checkReachable(int node) {
+
+        if (distances[node] < 0) {
+            throw new RuntimeException("No source can be reached from the given tile");
+        }
+    }
+}
@@ -1,179 +1,418 @@
 import java.util.List;
 import java.util.Set;
 import java.util.Map;
+import java.util.Iterator;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.HashMap;
-
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.AbstractSet;
+import java.util.NoSuchElementException;
 
 import java.lang.IllegalArgumentException;
 
-import javafx.scene.shape.Rectangle;
-import javafx.scene.control.Tooltip;
-
 public class Grid {
-    
-    private List<List<Tile>> grid;
-    private Set<Tile> validTiles;
+
+    // every tile type is stored as one byte; code 0 is always "wall"
+    public static final byte WALL = 0;
+
+    // tiles live in square chunks that are only allocated once they hold a
+    // non-wall tile and are dropped again when they go back to all wall, so
+    // memory follows the walkable area rather than the bounding box
+    public static final int CHUNK_SHIFT = 6;
+    public static final int CHUNK_SIZE  = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int chunkColumns;
+    private final int chunkRows;
+
+    private byte[][] chunkTiles;
+    private long[][] chunkValidRows;
+    private int[] chunkValidCounts;
+
+    private List<String> attributeNames;
+    private Map<String, Byte> attributeCodes;
+
+    private int validTileCount;
+    private NeighborGraph neighborGraph;
+    private ConnectivityTracker connectivity;
+    private ClusterGraph clusterGraph;
+    private Map<Byte, FlowField> flowFields;
 
     private final int width;
     private final int height;
-    
-    public Tile getTileAt(int row, int col) {
+
+    private void checkBounds(int row, int col, String message) {
 
         if (row < 0 || row >= height || col < 0 || col >= width) {
-            throw new IllegalArgumentException("Attempted to access tile out of bounds");
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private byte getCodeFor(String attribute) {
+
+        if (attribute == null) {
+            throw new IllegalArgumentException("Attempted to set null attribute");
+        }
+
+        Byte code = attributeCodes.get(attribute);
+
+        if (code == null) {
+
+            if (attributeNames.size() > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many distinct tile attributes");
+            }
+
+            code = (byte) attributeNames.size();
+            attributeNames.add(attribute);
+            attributeCodes.put(attribute, code);
         }
 
-        return grid.get(row).get(col);
+        return code;
+    }
+
+    public Tile getTileAt(int row, int col) {
+
+        checkBounds(row, col, "Attempted to access tile out of bounds");
+
+        return new Tile(row, col, this);
     }
 
     public Grid(int width, int height) {
-        
+
         if (width <= 0 || height <= 0) {
             throw new IllegalArgumentException("Width and height less than zero");
         }
-        
+
+        if ((long) width * (long) height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid has too many tiles to index");
+        }
+
         this.width  = width;
         this.height = height;
-        
-        this.grid = new ArrayList<List<Tile>>();
-        
-        for (int r = 0; r < height; r++) {
-            
-            List<Tile> line = new ArrayList<Tile>();
-            
-            for (int c = 0; c < width; c++) {
-                line.add(new Tile(r, c, this));
-            }
-            
-            grid.add(line);
-        }
 
-        this.validTiles = new HashSet<Tile>();
+        this.chunkColumns = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.chunkRows = (height + CHUNK_MASK) >> CHUNK_SHIFT;
+
+        this.chunkTiles = new byte[chunkColumns * chunkRows][];
+        this.chunkValidRows = new long[chunkColumns * chunkRows][];
+        this.chunkValidCounts = new int[chunkColumns * chunkRows];
+
+        this.attributeNames = new ArrayList<String>();
+        this.attributeCodes = new HashMap<String, Byte>();
+        getCodeFor("wall");
+
+        this.flowFields = new HashMap<Byte, FlowField>();
+        this.connectivity = new ConnectivityTracker(this);
     }
-    
+
     public int getWidth()  { return width;  }
     public int getHeight() { return height; }
-    
+
+    public int getIndexOf(int row, int col) { return row * width + col; }
+    public int getRowOf(int index)          { return index / width;     }
+    public int getColOf(int index)          { return index % width;     }
+
+    public int getChunkCount() { return chunkColumns * chunkRows; }
+
+    public int getChunkOf(int row, int col) {
+        return (row >> CHUNK_SHIFT) * chunkColumns + (col >> CHUNK_SHIFT);
+    }
+
+    public int getOffsetInChunk(int row, int col) {
+        return ((row & CHUNK_MASK) << CHUNK_SHIFT) | (col & CHUNK_MASK);
+    }
+
+    // bit c is set when column c of the chunk's row is traversable
+    public long getValidMaskOf(int chunk, int rowInChunk) {
+
+        long[] validRows = chunkValidRows[chunk];
+        return validRows == null ? 0 : validRows[rowInChunk];
+    }
+
+    private byte getCode(int row, int col) {
+
+        byte[] chunk = chunkTiles[getChunkOf(row, col)];
+        return chunk == null ? WALL : chunk[getOffsetInChunk(row, col)];
+    }
+
+    private void setCode(int row, int col, byte oldCode, byte newCode) {
+
+        int chunkIndex = getChunkOf(row, col);
+
+        if (chunkTiles[chunkIndex] == null) {
+            chunkTiles[chunkIndex] = new byte[CHUNK_SIZE * CHUNK_SIZE];
+            chunkValidRows[chunkIndex] = new long[CHUNK_SIZE];
+        }
+
+        chunkTiles[chunkIndex][getOffsetInChunk(row, col)] = newCode;
+
+        long bit = 1L << (col & CHUNK_MASK);
+
+        if (oldCode == WALL && newCode != WALL) {
+            chunkValidRows[chunkIndex][row & CHUNK_MASK] |= bit;
+            chunkValidCounts[chunkIndex]++;
+        }
+
+        if (oldCode != WALL && newCode == WALL) {
+            chunkValidRows[chunkIndex][row & CHUNK_MASK] &= ~bit;
+            chunkValidCounts[chunkIndex]--;
+        }
+
+        if (chunkValidCounts[chunkIndex] == 0) {
+            chunkTiles[chunkIndex] = null;
+            chunkValidRows[chunkIndex] = null;
+        }
+    }
+
     public void setAttributeAt(int row, int col, String attribute) {
-        
-        if (row < 0 || row >= height || col < 0 || col >= width) {
-            throw new IllegalArgumentException("Attempted to set out of bounds");
+
+        checkBounds(row, col, "Attempted to set out of bounds");
+
+        byte oldCode = getCode(row, col);
+        byte newCode = getCodeFor(attribute);
+
+        if (oldCode == newCode) {
+            return;
+        }
+
+        boolean isTurnedOn  = oldCode == WALL && newCode != WALL;
+        boolean isTurnedOff = oldCode != WALL && newCode == WALL;
+
+        setCode(row, col, oldCode, newCode);
+
+        // any repaint can move the tiles a field leads to
+        synchronized (flowFields) {
+            flowFields.clear();
         }
-        
-        String oldAttribute = this.getAttributeAt(row, col);
-        boolean isTurnedOn  =  ("wall".equals(oldAttribute)) && !("wall".equals(attribute));
-        boolean isTurnedOff = !("wall".equals(oldAttribute)) &&  ("wall".equals(attribute));
 
-        grid.get(row).get(col).setAttribute(attribute);
-        
         if (isTurnedOn) {
-            validTiles.add(getTileAt(row, col));
+            validTileCount++;
+            connectivity.tileTurnedOn(row, col);
         }
 
         if (isTurnedOff) {
-            validTiles.remove(getTileAt(row, col));
+            validTileCount--;
+            connectivity.tileTurnedOff(row, col);
+        }
+
+        if (isTurnedOn || isTurnedOff) {
+
+            synchronized (this) {
+                neighborGraph = null;
+            }
+
+            if (clusterGraph != null) {
+                clusterGraph.tileChanged(row, col);
+            }
         }
     }
 
     public String getAttributeAt(int row, int col) {
 
-        if (row < 0 || row >= height || col < 0 || col >= width) {
-            throw new IllegalArgumentException("Attempted to access attribute out of bounds");
-        }
+        checkBounds(row, col, "Attempted to access attribute out of bounds");
 
-        return getTileAt(row, col).getAttribute();
+        return attributeNames.get(getCode(row, col));
     }
 
-    public void setRectangleAt(int row, int col, Rectangle rectangle) {
+    public byte getTypeAt(int row, int col) {
 
-        if (row < 0 || row >= height || col < 0 || col >= width) {
-            throw new IllegalArgumentException("Attempted to set rectangle out of bounds");
-        }
+        checkBounds(row, col, "Attempted to access attribute out of bounds");
+
+        return getCode(row, col);
+    }
 
-        getTileAt(row, col).setRectangle(rectangle);
+    public byte getTypeOf(String attribute) {
+
+        Byte code = attributeCodes.get(attribute);
+        return code == null ? -1 : code;
     }
 
-    public Rectangle getRectangleAt(int row, int col) {
+    public boolean isTraversableAt(int row, int col) {
 
         if (row < 0 || row >= height || col < 0 || col >= width) {
-            throw new IllegalArgumentException("Attempted to access rectangle out of bounds");
+            return false;
         }
 
-        return getTileAt(row, col).getRectangle();
+        return getCode(row, col) != WALL;
     }
 
-    public void setTooltipAt(int row, int col, Tooltip tooltip) {
+    public int getValidTileCount() { return validTileCount; }
 
-        if (row < 0 || row >= height || col < 0 || col >= width) {
-            throw new IllegalArgumentException("Attempted to access rectangle out of bounds");
+    // walks the valid tiles in row-major order without allocating:
+    // for (int i = grid.nextValidIndex(0); i >= 0; i = grid.nextValidIndex(i + 1))
+    public int nextValidIndex(int fromIndex) {
+
+        if (fromIndex < 0) {
+            fromIndex = 0;
         }
 
-        getTileAt(row, col).setTooltip(tooltip);
-    }
+        int col = fromIndex % width;
 
-    public Tooltip getTooltipAt(int row, int col) {
+        for (int row = fromIndex / width; row < height; row++, col = 0) {
 
-        if (row < 0 || row >= height || col < 0 || col >= width) {
-            throw new IllegalArgumentException("Attempted to access rectangle out of bounds");
+            int chunkRowStart = (row >> CHUNK_SHIFT) * chunkColumns;
+
+            for (int chunkColumn = col >> CHUNK_SHIFT; chunkColumn < chunkColumns; chunkColumn++) {
+
+                long[] validRows = chunkValidRows[chunkRowStart + chunkColumn];
+
+                if (validRows == null) {
+                    continue;
+                }
+
+                long bits = validRows[row & CHUNK_MASK];
+
+                if (chunkColumn == col >> CHUNK_SHIFT) {
+                    bits &= -1L << (col & CHUNK_MASK);
+                }
+
+                if (bits != 0) {
+                    int validCol = (chunkColumn << CHUNK_SHIFT) + Long.numberOfTrailingZeros(bits);
+                    return row * width + validCol;
+                }
+            }
         }
 
-        return getTileAt(row, col).getTooltip();
+        return -1;
     }
 
+    public boolean isValidIndex(int index) {
+        return isTraversableAt(getRowOf(index), getColOf(index));
+    }
+
+    // a live, read-only view over the valid tiles; nothing is copied
     public Set<Tile> getValidTiles() {
-        
-        Set<Tile> validTilesCopy = new HashSet<Tile>();
+        return validTileView;
+    }
 
-        for (Tile tile : validTiles) {
-            validTilesCopy.add(new Tile(tile));
+    private final Set<Tile> validTileView = new AbstractSet<Tile>() {
+
+        @Override
+        public int size() {
+            return validTileCount;
         }
 
-        return validTilesCopy;
-    }
+        @Override
+        public boolean contains(Object o) {
 
-    public Map<Tile, List<Tile>> getAdjacencyMap() {
-        
-        Map<Tile, List<Tile>> adjacency = new HashMap<Tile, List<Tile>>();
-        
-        for (int r = 0; r < height; r++) {
-            for (int c = 0; c < width; c++) {
-                Tile cursor = getTileAt(r, c);
-                adjacency.put(cursor, cursor.getNeighbors());
+            if (!(o instanceof Tile)) {
+                return false;
             }
+
+            Tile tile = (Tile) o;
+            return isTraversableAt(tile.getRow(), tile.getCol());
         }
-        
-        return adjacency;
+
+        @Override
+        public Iterator<Tile> iterator() {
+
+            return new Iterator<Tile>() {
+
+                private int next = nextValidIndex(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public Tile next() {
+
+                    if (next < 0) {
+                        throw new NoSuchElementException();
+                    }
+
+                    Tile tile = new Tile(getRowOf(next), getColOf(next), Grid.this);
+                    next = nextValidIndex(next + 1);
+                    return tile;
+                }
+            };
+        }
+    };
+
+    // built on first use after the last change in traversability; searches
+    // running side by side may be the first to ask, so only one builds it
+    public synchronized NeighborGraph getNeighborGraph() {
+
+        if (neighborGraph == null) {
+            neighborGraph = new NeighborGraph(this);
+        }
+
+        return neighborGraph;
     }
 
-    public boolean isContiguous() {
-        
-        Set<Tile> tilesToExplore = getValidTiles();
-        Map<Tile, List<Tile>> adjacency = getAdjacencyMap();
+    // kept across edits; painting a tile only rebuilds the clusters around it
+    public ClusterGraph getClusterGraph() {
 
-        if (validTiles.size() == 0) {
-            return false;
+        if (clusterGraph == null) {
+            clusterGraph = new ClusterGraph(this);
         }
 
-        Tile start = tilesToExplore.iterator().next();
-        Stack<Tile> dfs = new Stack<Tile>();
-        
-        dfs.push(start);
-        tilesToExplore.remove(start);
-        
-        while (!dfs.empty()) {
-            Tile current = dfs.pop();
-            for (Tile neighbor : adjacency.get(current)) {
-                if (tilesToExplore.contains(neighbor)) {
-                    dfs.add(neighbor);
-                    tilesToExplore.remove(neighbor);
+        clusterGraph.update();
+        return clusterGraph;
+    }
+
+    // routes every tile to its nearest tile of the given type; built on first
+    // use after the last edit and shared by every thread asking for it
+    public FlowField getFlowField(byte type) {
+
+        if (type == WALL) {
+            throw new IllegalArgumentException("Cannot route to a wall");
+        }
+
+        NeighborGraph graph = getNeighborGraph();
+
+        synchronized (flowFields) {
+
+            FlowField field = flowFields.get(type);
+
+            if (field != null && field.getGraph() == graph) {
+                return field;
+            }
+
+            int[] sources = new int[validTileCount];
+            int sourceCount = 0;
+            int node = 0;
+
+            for (int i = nextValidIndex(0); i >= 0; i = nextValidIndex(i + 1), node++) {
+                if (getCode(getRowOf(i), getColOf(i)) == type) {
+                    sources[sourceCount++] = node;
                 }
             }
+
+            field = new FlowField(graph, Arrays.copyOf(sources, sourceCount));
+            flowFields.put(type, field);
+
+            return field;
         }
+    }
+
+    public Map<Tile, List<Tile>> getAdjacencyMap() {
 
-        return tilesToExplore.isEmpty();
+        NeighborGraph graph = getNeighborGraph();
+        Map<Tile, List<Tile>> adjacency = new HashMap<Tile, List<Tile>>();
+
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+
+            List<Tile> neighbors = new ArrayList<Tile>(graph.getDegree(node));
+
+            for (int e = graph.getNeighborStart(node); e < graph.getNeighborEnd(node); e++) {
+                int neighbor = graph.getNeighbor(e);
+                neighbors.add(getTileAt(graph.getRow(neighbor), graph.getCol(neighbor)));
+            }
+
+            adjacency.put(getTileAt(graph.getRow(node), graph.getCol(node)), neighbors);
+        }
+
+        return adjacency;
+    }
+
+    public int getComponentCount() {
+        return connectivity.getComponentCount();
+    }
+
+    public boolean isContiguous() {
+        return connectivity.isContiguous();
     }
 }
@@ -0,0 +1,208 @@
+// Hierarchical pathfinding (HPA*) over a grid's ClusterGraph.
+//
+// The start and goal are joined to the entrances of their own clusters by a
+// search inside each cluster, A* then plans a route over the entrances, and
+// only the legs of that route are refined back into tiles, each inside a
+// single cluster. Routes are not always shortest: a path is forced through
+// the entrances, which sit at one or two points per open border.
+public class HierarchicalPathfinder implements Pathfinder {
+
+    private static final int AREA = ClusterGraph.CLUSTER_SIZE * ClusterGraph.CLUSTER_SIZE;
+
+    private final Grid grid;
+    private final NeighborGraph graph;
+    private final ClusterGraph clusters;
+
+    // the abstract graph plus the start and the goal
+    private final int startNode;
+    private final int goalNode;
+
+    private final SearchSpace space;
+    private final NodeHeap open;
+    private final int[] costs;
+
+    private final int[] startDistances = new int[AREA];
+    private final int[] goalDistances = new int[AREA];
+    private final int[] legDistances = new int[AREA];
+
+    private int startCluster;
+    private int goalCluster;
+    private int goalTile;
+
+    private long expandedCount;
+
+    public HierarchicalPathfinder(Grid grid, NeighborGraph graph, ClusterGraph clusters) {
+
+        this.grid = grid;
+        this.graph = graph;
+        this.clusters = clusters;
+
+        this.startNode = clusters.getNodeCount();
+        this.goalNode = startNode + 1;
+
+        this.space = new SearchSpace(startNode + 2);
+        this.open = new NodeHeap();
+        this.costs = new int[startNode + 2];
+    }
+
+    @Override
+    public long getExpandedCount() { return expandedCount; }
+
+    private int getTile(int node, int fromTile) {
+
+        if (node == startNode) { return fromTile; }
+        if (node == goalNode)  { return goalTile; }
+
+        return clusters.getNodeTile(node);
+    }
+
+    private int estimate(int tile) {
+
+        return Math.abs(grid.getRowOf(tile) - grid.getRowOf(goalTile))
+            + Math.abs(grid.getColOf(tile) - grid.getColOf(goalTile));
+    }
+
+    private void relax(int node, int parent, int cost, int fromTile) {
+
+        if (space.isVisited(node) && costs[node] <= cost) {
+            return;
+        }
+
+        space.visit(node, parent);
+        costs[node] = cost;
+
+        int remaining = node == goalNode ? 0 : estimate(getTile(node, fromTile));
+        open.push(node, cost + remaining, remaining);
+    }
+
+    @Override
+    public int[] findPath(int from, int to) {
+
+        int fromTile = graph.getTileIndex(from);
+
+        goalTile = graph.getTileIndex(to);
+        startCluster = clusters.getClusterOf(fromTile);
+        goalCluster = clusters.getClusterOf(goalTile);
+
+        clusters.search(startCluster, fromTile, startDistances);
+        clusters.search(goalCluster, goalTile, goalDistances);
+
+        space.reset();
+        open.clear();
+
+        space.visit(startNode, startNode);
+        costs[startNode] = 0;
+        open.push(startNode, estimate(fromTile), estimate(fromTile));
+
+        while (!open.isEmpty()) {
+
+            int priority = open.peekPriority();
+            int current = open.pop();
+
+            if (current == goalNode) {
+                break;
+            }
+
+            if (priority != costs[current] + estimate(getTile(current, fromTile))) {
+                continue;
+            }
+
+            expandedCount++;
+
+            int currentTile = getTile(current, fromTile);
+            int currentCluster = clusters.getClusterOf(currentTile);
+
+            // into the goal, from anything inside its cluster that reaches it
+            if (currentCluster == goalCluster) {
+
+                int distance = goalDistances[clusters.getLocalIndex(goalCluster, currentTile)];
+
+                if (distance >= 0) {
+                    relax(goalNode, current, costs[current] + distance, fromTile);
+                }
+            }
+
+            if (current == startNode) {
+
+                int end = clusters.getClusterEnd(startCluster);
+
+                for (int node = clusters.getClusterStart(startCluster); node < end; node++) {
+
+                    int distance = startDistances[clusters.getLocalIndex(startCluster, clusters.getNodeTile(node))];
+
+                    if (distance >= 0) {
+                        relax(node, startNode, distance, fromTile);
+                    }
+                }
+
+                continue;
+            }
+
+            for (int e = clusters.getEdgeStart(current); e < clusters.getEdgeEnd(current); e++) {
+                relax(clusters.getEdgeTarget(e), current, costs[current] + clusters.getEdgeCost(e), fromTile);
+            }
+        }
+
+        return refine(space.tracePath(startNode, goalNode), fromTile, costs[goalNode]);
+    }
+
+    // turns the abstract route back into neighbor graph nodes
+    private int[] refine(int[] route, int fromTile, int length) {
+
+        int[] tiles = new int[length + 1];
+        int next = 0;
+
+        tiles[next++] = fromTile;
+
+        for (int i = 1; i < route.length; i++) {
+
+            int lhs = getTile(route[i - 1], fromTile);
+            int rhs = getTile(route[i], fromTile);
+
+            if (route[i] == goalNode) {
+
+                // stepping back toward the goal's search start walks forward
+                int local = clusters.getLocalIndex(goalCluster, lhs);
+
+                while (goalDistances[local] > 0) {
+                    local = clusters.stepBack(goalDistances, local);
+                    tiles[next++] = clusters.getTileIndex(goalCluster, local);
+                }
+            }
+            else if (route[i - 1] == startNode) {
+                next = appendLeg(tiles, next, startCluster, startDistances, rhs);
+            }
+            else if (clusters.getClusterOf(lhs) != clusters.getClusterOf(rhs)) {
+                tiles[next++] = rhs;
+            }
+            else {
+                int cluster = clusters.getClusterOf(lhs);
+                clusters.search(cluster, lhs, legDistances);
+                next = appendLeg(tiles, next, cluster, legDistances, rhs);
+            }
+        }
+
+        int[] path = new int[next];
+
+        for (int i = 0; i < next; i++) {
+            path[i] = graph.getNode(tiles[i]);
+        }
+
+        return path;
+    }
+
+    // appends the tiles after the search's start up to and including toTile
+    private int appendLeg(int[] tiles, int next, int cluster, int[] distances, int toTile) {
+
+        int local = clusters.getLocalIndex(cluster, toTile);
+        int length = distances[local];
+
+        // traced from the far end, so filled in from the back
+        for (int i = next + length - 1; i >= next; i--) {
+            tiles[i] = clusters.getTileIndex(cluster, local);
+            local = clusters.stepBack(distances, local);
+        }
+
+        return next + length;
+    }
+}
@@ -0,0 +1,331 @@
+import java.util.Arrays;
+
+// Jump point search for uniform-cost, 4-connected grids.
+//
+// Among equally short paths it only follows the canonical ones that move
+// vertically as early as possible: a horizontal run keeps going straight and
+// only turns where the tile behind it blocked an earlier turn, while a
+// vertical run may turn either way at every step. Runs are jumped over in a
+// scan of the grid rather than expanded, so only the tiles where a canonical
+// path can turn are ever pushed onto the open list. Each jump costs its
+// length, so A* over the jump points with the Manhattan heuristic returns
+// paths exactly as long as BFS.
+//
+// Several targets from one origin are found in one search: every target
+// stops a jump, and the heuristic is the distance to the box around the
+// targets, which stays consistent, so each target's cost is final the first
+// time it is popped.
+public class JumpPointPathfinder implements Pathfinder {
+
+    private static final int UP    = 0;
+    private static final int DOWN  = 1;
+    private static final int LEFT  = 2;
+    private static final int RIGHT = 3;
+
+    private static final int[] ROW_STEPS = { -1, 1,  0, 0 };
+    private static final int[] COL_STEPS = {  0, 0, -1, 1 };
+
+    // arrival mask of the start node, which may leave in every direction
+    private static final int START = 1 << 4;
+
+    private final Grid grid;
+    private final NeighborGraph graph;
+
+    private final SearchSpace space;
+    private final SearchSpace targets;
+    private final NodeHeap open;
+    private final int[] costs;
+    private final int[] arrivals;
+    private final int[] expanded;
+
+    // the current search's targets as sorted tile indices, and their box
+    private int[] targetTiles;
+    private int minRow;
+    private int minCol;
+    private int maxRow;
+    private int maxCol;
+
+    private long expandedCount;
+
+    public JumpPointPathfinder(Grid grid, NeighborGraph graph) {
+
+        this.grid = grid;
+        this.graph = graph;
+
+        this.space = new SearchSpace(graph.getNodeCount());
+        this.targets = new SearchSpace(graph.getNodeCount());
+        this.open = new NodeHeap();
+        this.costs = new int[graph.getNodeCount()];
+        this.arrivals = new int[graph.getNodeCount()];
+        this.expanded = new int[graph.getNodeCount()];
+    }
+
+    @Override
+    public long getExpandedCount() { return expandedCount; }
+
+    private boolean isOpen(int row, int col) {
+        return grid.isTraversableAt(row, col);
+    }
+
+    // checked on every tile a jump scans, so the box rules most out first
+    private boolean isTarget(int row, int col) {
+
+        if (row < minRow || row > maxRow || col < minCol || col > maxCol) {
+            return false;
+        }
+
+        return targetTiles.length == 1
+            ? targetTiles[0] == grid.getIndexOf(row, col)
+            : Arrays.binarySearch(targetTiles, grid.getIndexOf(row, col)) >= 0;
+    }
+
+    private int estimate(int row, int col) {
+
+        return Math.max(0, Math.max(minRow - row, row - maxRow))
+             + Math.max(0, Math.max(minCol - col, col - maxCol));
+    }
+
+    // a horizontal run turns only where the turn could not have been taken
+    // one tile earlier
+    private boolean hasForcedTurn(int row, int col, int colStep) {
+
+        return (isOpen(row - 1, col) && !isOpen(row - 1, col - colStep))
+            || (isOpen(row + 1, col) && !isOpen(row + 1, col - colStep));
+    }
+
+    private int jumpHorizontal(int row, int col, int colStep) {
+
+        while (true) {
+
+            col += colStep;
+
+            if (!isOpen(row, col)) {
+                return -1;
+            }
+
+            if (isTarget(row, col) || hasForcedTurn(row, col, colStep)) {
+                return grid.getIndexOf(row, col);
+            }
+        }
+    }
+
+    private int jumpVertical(int row, int col, int rowStep) {
+
+        while (true) {
+
+            row += rowStep;
+
+            if (!isOpen(row, col)) {
+                return -1;
+            }
+
+            if (isTarget(row, col)
+                || jumpHorizontal(row, col, -1) >= 0
+                || jumpHorizontal(row, col, 1) >= 0) {
+
+                return grid.getIndexOf(row, col);
+            }
+        }
+    }
+
+    private int getDirections(int arrivalMask, int row, int col) {
+
+        if ((arrivalMask & START) != 0) {
+            return 0xF;
+        }
+
+        int directions = 0;
+
+        if ((arrivalMask & ((1 << UP) | (1 << DOWN))) != 0) {
+            directions |= (1 << LEFT) | (1 << RIGHT);
+        }
+
+        for (int d = UP; d <= RIGHT; d++) {
+
+            if ((arrivalMask & (1 << d)) == 0) {
+                continue;
+            }
+
+            directions |= 1 << d;
+
+            if (d == LEFT || d == RIGHT) {
+
+                int colStep = COL_STEPS[d];
+
+                if (isOpen(row - 1, col) && !isOpen(row - 1, col - colStep)) {
+                    directions |= 1 << UP;
+                }
+
+                if (isOpen(row + 1, col) && !isOpen(row + 1, col - colStep)) {
+                    directions |= 1 << DOWN;
+                }
+            }
+        }
+
+        return directions;
+    }
+
+    private void relax(int node, int parent, int cost, int direction) {
+
+        boolean isNew = !space.isVisited(node) || cost < costs[node];
+
+        if (isNew) {
+            space.visit(node, parent);
+            costs[node] = cost;
+            arrivals[node] = 0;
+            expanded[node] = 0;
+        }
+        else if (cost > costs[node] || (arrivals[node] & (1 << direction)) != 0) {
+            return;
+        }
+
+        // an equally short arrival from a new direction may allow new turns
+        arrivals[node] |= 1 << direction;
+
+        int row = graph.getRow(node);
+        int col = graph.getCol(node);
+        int remaining = estimate(row, col);
+
+        open.push(node, cost + remaining, remaining);
+    }
+
+    @Override
+    public int[] findPath(int from, int to) {
+        return findPaths(from, new int[] { to })[0];
+    }
+
+    @Override
+    public int[][] findPaths(int from, int[] targetNodes) {
+
+        space.reset();
+        targets.reset();
+        open.clear();
+
+        targetTiles = new int[targetNodes.length];
+
+        minRow = Integer.MAX_VALUE;
+        minCol = Integer.MAX_VALUE;
+        maxRow = Integer.MIN_VALUE;
+        maxCol = Integer.MIN_VALUE;
+
+        int remaining = 0;
+
+        for (int target : targetNodes) {
+
+            if (targets.isVisited(target)) {
+                continue;
+            }
+
+            targets.visit(target, target);
+            targetTiles[remaining++] = graph.getTileIndex(target);
+
+            minRow = Math.min(minRow, graph.getRow(target));
+            minCol = Math.min(minCol, graph.getCol(target));
+            maxRow = Math.max(maxRow, graph.getRow(target));
+            maxCol = Math.max(maxCol, graph.getCol(target));
+        }
+
+        targetTiles = Arrays.copyOf(targetTiles, remaining);
+        Arrays.sort(targetTiles);
+
+        space.visit(from, from);
+        costs[from] = 0;
+        arrivals[from] = START;
+        expanded[from] = 0;
+
+        open.push(from, estimate(graph.getRow(from), graph.getCol(from)), 0);
+
+        while (!open.isEmpty() && remaining > 0) {
+
+            int priority = open.peekPriority();
+            int current = open.pop();
+
+            int row = graph.getRow(current);
+            int col = graph.getCol(current);
+            int fresh = arrivals[current] & ~expanded[current];
+
+            if (priority != costs[current] + estimate(row, col) || fresh == 0) {
+                continue;
+            }
+
+            // a target may be popped again for a new arrival direction, so it
+            // is only counted the first time
+            if (expanded[current] == 0 && targets.isVisited(current) && --remaining == 0) {
+                break;
+            }
+
+            expanded[current] |= fresh;
+            expandedCount++;
+
+            int directions = getDirections(fresh, row, col);
+
+            for (int d = UP; d <= RIGHT; d++) {
+
+                if ((directions & (1 << d)) == 0) {
+                    continue;
+                }
+
+                int jumpPoint = d == UP || d == DOWN
+                    ? jumpVertical(row, col, ROW_STEPS[d])
+                    : jumpHorizontal(row, col, COL_STEPS[d]);
+
+                if (jumpPoint < 0) {
+                    continue;
+                }
+
+                int jumpRow = grid.getRowOf(jumpPoint);
+                int jumpCol = grid.getColOf(jumpPoint);
+                int distance = Math.abs(jumpRow - row) + Math.abs(jumpCol - col);
+
+                relax(graph.getNode(jumpPoint), current, costs[current] + distance, d);
+            }
+        }
+
+        int[][] paths = new int[targetNodes.length][];
+
+        for (int i = 0; i < targetNodes.length; i++) {
+            paths[i] = fillJumps(space.tracePath(from, targetNodes[i]));
+        }
+
+        return paths;
+    }
+
+    // consecutive jump points always share a row or a column
+    private int[] fillJumps(int[] jumpPoints) {
+
+        int length = 1;
+
+        for (int i = 1; i < jumpPoints.length; i++) {
+            length += Math.abs(graph.getRow(jumpPoints[i]) - graph.getRow(jumpPoints[i - 1]))
+                    + Math.abs(graph.getCol(jumpPoints[i]) - graph.getCol(jumpPoints[i - 1]));
+        }
+
+        int[] path = new int[length];
+        int next = 0;
+
+        path[next++] = jumpPoints[0];
+
+        for (int i = 1; i < jumpPoints.length; i++) {
+
+            int row = graph.getRow(jumpPoints[i - 1]);
+            int col = graph.getCol(jumpPoints[i - 1]);
+
+            int rowStep = Integer.signum(graph.getRow(jumpPoints[i]) - row);
+            int colStep = Integer.signum(graph.getCol(jumpPoints[i]) - col);
+
+            int node = jumpPoints[i - 1];
+
+            while (node != jumpPoints[i]) {
+
+                row += rowStep;
+                col += colStep;
+
+                // neighbors along a row are consecutive nodes
+                node = rowStep == 0 ? node + colStep : graph.getNode(row, col);
+                path[next++] = node;
+            }
+        }
+
+        return path;
+    }
+}
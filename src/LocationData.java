@@ -1,21 +1,40 @@
 import java.util.*;
-import javafx.scene.paint.Color;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class LocationData {
 
+    // in place of a tile capacity: each floor tile holds GRID_CROWDING times
+    // its even share of the actors. Busy corridors on the sample maps carry
+    // several times that share, so they hold actors up while the open floor
+    // around them does not
+    public static final int AUTO_CAPACITY = -1;
+
+    private static final int GRID_CROWDING = 4;
+
     private ScheduleGenerator generator;
     private List<List<Tile>> schedules;
     private Grid grid;
 
-    // 1st idx : a'th actor
-    // 2nd idx : p'th period
-    // 3rd idx : n'th step
-    private List<List<List<Tile>>> pathsAllActors;
+    // actors a floor tile holds in one step, as set and as last simulated,
+    // and how many moves still left a floor tile holding more
+    private int tileCapacitySetting;
+    private int tileCapacity;
+    private long overCapacityCount;
+
+    // every actor's path through every period; actors with the same schedule
+    // form one weighted group, groups on the same leg share one trajectory,
+    // and the waits congestion adds are kept beside them as each period's
+    // walks
+    private TrajectoryStore trajectories;
+
+    // actors per (period, step, node), over the graph the paths were found on
+    private NeighborGraph graph;
+    private OccupancyTimeline tileUsage;
 
-    // 1st idx : p'th period
-    // 2nd idx : n'th step
-    // 3rd key : k'th tile
-    private List<List<Map<Tile, Integer>>> tileUsage;
+    // the node of every tile in the trajectories when usage was counted
+    private int[] tileNodes;
 
     private int period;
     private int lastTransitionPeriod;
@@ -26,100 +45,725 @@ public class LocationData {
     private int[] maxStepsAllPeriods;
 
     public LocationData(ScheduleGenerator generator, List<List<Tile>> schedules, Grid grid) {
+        this(generator, schedules, grid, AUTO_CAPACITY);
+    }
+
+    public LocationData(ScheduleGenerator generator, List<List<Tile>> schedules, Grid grid, int tileCapacity) {
+
+        if (tileCapacity <= 0 && tileCapacity != AUTO_CAPACITY) {
+            throw new IllegalArgumentException("A floor tile must hold at least one actor");
+        }
 
         this.generator = generator;
         this.schedules = schedules;
         this.grid = grid;
+        this.tileCapacitySetting = tileCapacity;
 
         this.period = 0;
         this.lastTransitionPeriod = schedules.get(0).size() - 1;
 
         initPaths();
-        generateTileUsage();
-        padPaths();
+        findTileNodes();
+        simulateCongestion();
         generateTileUsage();
     }
 
     private void initPaths() {
+        trajectories = generator.getPathsForSchedules(schedules);
+    }
+
+    // re-routes only the legs that the given edits can have changed and then
+    // simulates the same schedules again; changedTiles holds the indices of
+    // tiles whose traversability flipped since the paths were found, none of
+    // which may be a scheduled tile. Returns the number of legs re-routed, and
+    // throws when an edit closes a scheduled tile or leaves a leg's ends in
+    // different regions.
+    //
+    // every check and search runs before anything is changed, so a repair
+    // that throws leaves the last simulation as it was
+    public int repairPaths(Collection<Integer> changedTiles) {
+
+        boolean[] isStale = findStaleTrajectories(changedTiles);
+        int staleCount = 0;
+
+        for (boolean stale : isStale) {
+            staleCount += stale ? 1 : 0;
+        }
+
+        int[] fromTiles = new int[staleCount];
+        int[] toTiles = new int[staleCount];
+        int[] tileIndices = trajectories.getTileIndices();
+
+        for (int t = 0, i = 0; t < isStale.length; t++) {
+
+            if (isStale[t]) {
+                int offset = trajectories.getTrajectoryOffset(t);
+                fromTiles[i] = tileIndices[offset];
+                toTiles[i++] = tileIndices[offset + trajectories.getTrajectoryLength(t) - 1];
+            }
+        }
+
+        // the grid may be split, so long as no path that has to move is cut
+        if (!grid.isContiguous()) {
+
+            ComponentReport report = ComponentLabeler.label(grid);
+
+            for (int i = 0; i < staleCount; i++) {
+
+                int fromLabel = report.getLabelAt(grid.getRowOf(fromTiles[i]), grid.getColOf(fromTiles[i]));
+                int toLabel = report.getLabelAt(grid.getRowOf(toTiles[i]), grid.getColOf(toTiles[i]));
+
+                if (fromLabel != toLabel) {
+                    throw new RuntimeException("Edits cut a scheduled path between two regions.");
+                }
+            }
+        }
 
-        pathsAllActors = new ArrayList<List<List<Tile>>>();
+        int[][] repaired = generator.getTilePaths(fromTiles, toTiles);
+        int[] replacements = new int[isStale.length];
 
-        for (List<Tile> schedule : schedules) {
-            List<List<Tile>> pathsOneActor = generator.getPathsForSchedule(schedule);
-            pathsAllActors.add(pathsOneActor);
+        for (int t = 0, i = 0; t < isStale.length; t++) {
+            replacements[t] = isStale[t] ? trajectories.addTrajectory(repaired[i++]) : t;
         }
+
+        for (int p = 0; p < lastTransitionPeriod; p++) {
+            for (int g = 0; g < trajectories.getGroupCount(); g++) {
+                trajectories.setTrajectory(g, p, replacements[trajectories.getTrajectory(g, p)]);
+            }
+        }
+
+        trajectories.compact();
+
+        period = 0;
+
+        findTileNodes();
+        simulateCongestion();
+        generateTileUsage();
+
+        return staleCount;
     }
 
-    private void padPaths() {
+    // a path is stale when it crosses a tile that closed, or when an opened
+    // tile lies close enough to both of its ends to make it shorter
+    private boolean[] findStaleTrajectories(Collection<Integer> changedTiles) {
+
+        NeighborGraph graph = grid.getNeighborGraph();
+
+        BitSet closed = new BitSet();
+        List<Integer> opened = new ArrayList<Integer>();
+
+        for (int tileIndex : changedTiles) {
+
+            if (grid.isValidIndex(tileIndex)) {
+                opened.add(graph.getNode(tileIndex));
+            }
+            else {
+                closed.set(tileIndex);
+            }
+        }
+
+        // the distance to the nearest opened tile from each end can only
+        // understate the detour through any one of them, so nothing is missed
+        int[] distances = opened.isEmpty()
+            ? null
+            : graph.getDistancesFrom(opened.stream().mapToInt(Integer::intValue).toArray());
+
+        int[] tileIndices = trajectories.getTileIndices();
+        boolean[] isStale = new boolean[trajectories.getTrajectoryCount()];
+
+        for (int t = 0; t < isStale.length; t++) {
+
+            int offset = trajectories.getTrajectoryOffset(t);
+            int length = trajectories.getTrajectoryLength(t);
+
+            int fromNode = graph.getNode(tileIndices[offset]);
+            int toNode = graph.getNode(tileIndices[offset + length - 1]);
+
+            if (fromNode < 0 || toNode < 0) {
+                throw new RuntimeException("Edits closed a scheduled tile.");
+            }
+
+            for (int i = offset; i < offset + length && !closed.isEmpty(); i++) {
+                isStale[t] |= closed.get(tileIndices[i]);
+            }
+
+            if (isStale[t] || distances == null) {
+                continue;
+            }
+
+            isStale[t] = distances[fromNode] >= 0 && distances[toNode] >= 0
+                && distances[fromNode] + distances[toNode] < length - 1;
+        }
+
+        return isStale;
+    }
+
+    // actors walking the same trajectory in one period who have moved in
+    // lockstep so far: actors [start .. end) of the period, which are
+    // numbered trajectory by trajectory
+    private static class Bundle {
+
+        private int start;
+        private int end;
+
+        private int trajectory;
+        private int position;
+
+        // steps spent at the current position so far
+        private int waited;
+
+        // the latest of the bundle's earlier wait runs in the period's walks,
+        // -1 before its first
+        private int lastWait;
+
+        // the actors before at as a new bundle, leaving the rest in this one
+        private Bundle split(int at) {
+
+            Bundle front = copy();
+
+            front.end = at;
+            start = at;
+
+            return front;
+        }
+
+        // the actors from at on as a new bundle, leaving the rest in this one
+        private Bundle splitBack(int at) {
+
+            Bundle back = copy();
+
+            back.start = at;
+            end = at;
+
+            return back;
+        }
+
+        private Bundle copy() {
+
+            Bundle copy = new Bundle();
+
+            copy.start = start;
+            copy.end = end;
+            copy.trajectory = trajectory;
+            copy.position = position;
+            copy.waited = waited;
+            copy.lastWait = lastWait;
+
+            return copy;
+        }
+    }
+
+    // one period of the congestion pass, step by step: actors move on unless
+    // the next tile is a floor tile that is already full, in which case as
+    // many actors as fit go ahead and the rest wait where they are
+    //
+    // bundles that block each other, head on or round a cycle of tiles, trade
+    // actors along instead, which keeps each tile's count
+    //
+    // every decision is made by actor count and in actor order, never by
+    // group: a bundle splits wherever a tile fills up or a trade takes only
+    // part of it, and the actors that go are the ones that would if each
+    // walked on its own, so the results are the same as with one group per
+    // actor
+    private class PeriodPass {
+
+        private final int period;
+        private final boolean[] isBounded;
+
+        private long[] occupancy;
+
+        // every wait run of every bundle, linked back to the one before it,
+        // and in the end a walk for every way a trajectory was walked; a
+        // bundle that splits shares its earlier runs with the new one
+        private final PeriodWalks walks;
+
+        // blocked bundles by the node they stand on, for finding the ones
+        // that block each other; only entries stamped with the current step
+        // count
+        private int[] firstBlocked;
+        private int[] blockedStamps;
+        private int[] nextBlocked;
+
+        // where the search for bundles facing back along each edge got to
+        private int[] edgeStamps;
+        private int[] edgeCursors;
+
+        // the walk that last reached each node while looking for cycles, and
+        // the bundle it followed out of the node
+        private int[] walkIds;
+        private int[] waitingAt;
+        private int walkCount;
+        private final List<Bundle> cycle;
+
+        // bundles split off by trades this step, put back in their actors'
+        // place in walking once every trade is done
+        private final List<Bundle> released;
+
+        private final List<Bundle> arrived;
+        private long overCapacityCount;
+
+        private PeriodPass(int period, boolean[] isBounded) {
+
+            this.period = period;
+            this.isBounded = isBounded;
+
+            this.occupancy = new long[graph.getNodeCount()];
+
+            this.walks = new PeriodWalks();
+
+            this.firstBlocked = new int[graph.getNodeCount()];
+            this.blockedStamps = new int[graph.getNodeCount()];
+            this.nextBlocked = new int[16];
+
+            this.edgeStamps = new int[graph.getEdgeCount()];
+            this.edgeCursors = new int[graph.getEdgeCount()];
+
+            this.walkIds = new int[graph.getNodeCount()];
+            this.waitingAt = new int[graph.getNodeCount()];
+            this.cycle = new ArrayList<Bundle>();
+
+            this.released = new ArrayList<Bundle>();
+            this.arrived = new ArrayList<Bundle>();
+
+            Arrays.fill(blockedStamps, -1);
+            Arrays.fill(edgeStamps, -1);
+        }
+
+        private int getWeight(Bundle bundle) {
+            return bundle.end - bundle.start;
+        }
+
+        private int getNode(Bundle bundle, int position) {
+            return tileNodes[trajectories.getTrajectoryOffset(bundle.trajectory) + position];
+        }
+
+        private void advance(Bundle bundle) {
+
+            int weight = getWeight(bundle);
+            int target = getNode(bundle, bundle.position + 1);
+
+            occupancy[getNode(bundle, bundle.position)] -= weight;
+            occupancy[target] += weight;
+
+            if (bundle.waited > 0) {
+                bundle.lastWait = walks.addWait(bundle.position, bundle.waited, bundle.lastWait);
+            }
+
+            bundle.position++;
+            bundle.waited = 0;
+        }
+
+        // counts a floor tile a move has just put over capacity
+        private void checkCapacity(Bundle bundle) {
+
+            int node = getNode(bundle, bundle.position);
+
+            if (isBounded[node] && occupancy[node] > tileCapacity) {
+                overCapacityCount++;
+            }
+        }
+
+        private void run() {
+
+            int trajectoryCount = trajectories.getTrajectoryCount();
+
+            // actors on trajectory t are numbered [starts[t], starts[t + 1])
+            int[] starts = new int[trajectoryCount + 1];
+
+            for (int g = 0; g < trajectories.getGroupCount(); g++) {
+                starts[trajectories.getTrajectory(g, period) + 1] += trajectories.getWeight(g);
+            }
+
+            for (int t = 0; t < trajectoryCount; t++) {
+                starts[t + 1] += starts[t];
+            }
+
+            // reused every step rather than reallocated: the bundles still
+            // walking are filtered into stepped, then moved back into walking;
+            // when trades split bundles the two lists swap places instead
+            List<Bundle> walking = new ArrayList<Bundle>();
+            List<Bundle> stepped = new ArrayList<Bundle>();
+            List<Bundle> blocked = new ArrayList<Bundle>();
+
+            // without grouping every actor sets off as a bundle of its own
+            int bundleSize = generator.isGrouping() ? Integer.MAX_VALUE : 1;
+
+            for (int t = 0; t < trajectoryCount; t++) {
+                for (int start = starts[t]; start < starts[t + 1]; start += Math.min(bundleSize, starts[t + 1] - start)) {
+
+                    Bundle bundle = new Bundle();
+
+                    bundle.start = start;
+                    bundle.end = start + Math.min(bundleSize, starts[t + 1] - start);
+                    bundle.trajectory = t;
+                    bundle.lastWait = -1;
+
+                    walking.add(bundle);
+                    occupancy[getNode(bundle, 0)] += getWeight(bundle);
+                }
+            }
+
+            for (int step = 0; !walking.isEmpty(); step++) {
+
+                // bundles that reached their last tile leave the grid
+                for (Bundle bundle : walking) {
+
+                    if (bundle.position == trajectories.getTrajectoryLength(bundle.trajectory) - 1) {
+                        occupancy[getNode(bundle, bundle.position)] -= getWeight(bundle);
+                        arrived.add(bundle);
+                    }
+                    else {
+                        stepped.add(bundle);
+                    }
+                }
+
+                walking.clear();
 
-        for (List<List<Tile>> pathsOneActor : pathsAllActors) {
-            for (int p = 0; p < pathsOneActor.size(); p++) {
+                // bundles move in the order of their actors' numbers, just as
+                // the actors would one at a time, so the same paths always get
+                // the same waits
+                for (Bundle bundle : stepped) {
 
-                List<Tile> path = pathsOneActor.get(p);
+                    int target = getNode(bundle, bundle.position + 1);
+                    int admitted = bundle.end;
 
-                for (int n = path.size() - 1; n >= 0; n--) {
+                    // as many actors as the tile has room for, in order
+                    if (isBounded[target]) {
+                        long room = Math.max(0, tileCapacity - occupancy[target]);
+                        admitted = (int) Math.min(bundle.end, bundle.start + room);
+                    }
 
-                    Tile currentTile = path.get(n);
-                    double scaleFactor = getScaleFactorAt(p, n, currentTile);
+                    Bundle moving = admitted == bundle.end ? bundle : null;
+
+                    if (admitted > bundle.start && admitted < bundle.end) {
+                        moving = bundle.split(admitted);
+                    }
 
-                    if (scaleFactor > 0.8) {
-                        path.add(n--, currentTile);
+                    if (moving != null) {
+                        advance(moving);
+                        checkCapacity(moving);
+                        walking.add(moving);
+                    }
+
+                    if (moving != bundle) {
+                        bundle.waited++;
+                        walking.add(bundle);
+                        markBlocked(bundle, blocked, step);
                     }
                 }
+
+                releaseHeadOn(blocked, step);
+                releaseCycles(blocked, step);
+
+                stepped.clear();
+                blocked.clear();
+
+                if (!released.isEmpty()) {
+
+                    released.sort(Comparator.comparingInt(bundle -> bundle.start));
+                    merge(walking, stepped);
+
+                    List<Bundle> merged = stepped;
+                    stepped = walking;
+                    walking = merged;
+
+                    stepped.clear();
+                    released.clear();
+                }
             }
+
+            addWalks();
+
+            // only the walks are needed once every bundle has arrived
+            occupancy = null;
+            firstBlocked = null;
+            blockedStamps = null;
+            nextBlocked = null;
+            edgeStamps = null;
+            edgeCursors = null;
+            walkIds = null;
+            waitingAt = null;
+            arrived.clear();
         }
-    }
 
-    private void generateTileUsage() {
+        // walking and the released bundles, both in order of their first
+        // actor, into merged in the same order
+        private void merge(List<Bundle> walking, List<Bundle> merged) {
 
-        tileUsage = new ArrayList<List<Map<Tile, Integer>>>();
+            int r = 0;
 
-        maxUsage = 0;
-        step = 0;
+            for (Bundle bundle : walking) {
 
-        maxStepsAllPeriods = new int[lastTransitionPeriod];
-        Arrays.fill(maxStepsAllPeriods, 0);
+                while (r < released.size() && released.get(r).start < bundle.start) {
+                    merged.add(released.get(r++));
+                }
 
-        for (int p = 0; p < lastTransitionPeriod; p++) {
-            tileUsage.add(new ArrayList<Map<Tile, Integer>>());
+                merged.add(bundle);
+            }
+
+            merged.addAll(released.subList(r, released.size()));
         }
 
-        for (List<List<Tile>> pathsOneActorAllPeriods : pathsAllActors) {
+        // bundles of one trajectory that waited alike become one walk
+        private void addWalks() {
 
-            for (int p = 0; p < lastTransitionPeriod; p++) {
+            Map<Integer, List<Integer>> written = new HashMap<Integer, List<Integer>>();
 
-                List<Map<Tile, Integer>> usageOnePeriodAllSteps = tileUsage.get(p);
-                List<Tile> pathOneActorOnePeriod = pathsOneActorAllPeriods.get(p);
+            for (Bundle bundle : arrived) {
 
-                int numSteps = pathOneActorOnePeriod.size();
-                maxStepsAllPeriods[p] = Math.max(maxStepsAllPeriods[p], numSteps);
+                List<Integer> siblings = written.computeIfAbsent(bundle.trajectory, t -> new ArrayList<Integer>());
+                int weight = getWeight(bundle);
+                int walk = -1;
 
-                // pad out to number of steps (compute if absent)
-                while (usageOnePeriodAllSteps.size() < numSteps) {
+                for (int i = 0; i < siblings.size() && walk < 0; i++) {
+                    if (walks.hasSameWaits(walks.getLastWait(siblings.get(i)), bundle.lastWait)) {
+                        walk = siblings.get(i);
+                    }
+                }
 
-                    Map<Tile, Integer> usageOnePeriodOneStep = new HashMap<Tile, Integer>();
+                if (walk >= 0) {
+                    walks.addWeight(walk, weight);
+                }
+                else {
+                    siblings.add(walks.addWalk(bundle.trajectory, weight, bundle.lastWait));
+                }
+            }
+
+            walks.trim();
+        }
+
+        private void markBlocked(Bundle bundle, List<Bundle> blocked, int step) {
+
+            int node = getNode(bundle, bundle.position);
+            int index = blocked.size();
+
+            if (index == nextBlocked.length) {
+                nextBlocked = Arrays.copyOf(nextBlocked, index * 2);
+            }
 
-                    for (Tile validTile : grid.getValidTiles()) {
-                        usageOnePeriodOneStep.put(validTile, 0);
+            nextBlocked[index] = blockedStamps[node] == step ? firstBlocked[node] : -1;
+            firstBlocked[node] = index;
+            blockedStamps[node] = step;
+
+            blocked.add(bundle);
+        }
+
+        // count of the bundle's actors on their own, its first or its last,
+        // to be let through when the bundle is stuck; they did not wait this
+        // step after all
+        private Bundle release(Bundle bundle, int count, boolean isLast) {
+
+            Bundle passing = bundle;
+
+            if (getWeight(bundle) > count) {
+                passing = isLast ? bundle.splitBack(bundle.end - count) : bundle.split(bundle.start + count);
+                released.add(passing);
+            }
+
+            passing.waited--;
+            advance(passing);
+
+            return passing;
+        }
+
+        // bundles waiting for a tile whose own bundles wait for the first
+        // bundle's tile: neither side can ever go first, so they trade actor
+        // for actor, as many as the smaller side has, which leaves both tiles
+        // as full as they were; the far side gives up its last actors, which
+        // are the first found there one actor at a time
+        private void releaseHeadOn(List<Bundle> blocked, int step) {
+
+            for (Bundle bundle : blocked) {
+
+                if (bundle.waited == 0) {
+                    continue;
+                }
+
+                int current = getNode(bundle, bundle.position);
+                int target = getNode(bundle, bundle.position + 1);
+
+                if (blockedStamps[target] != step) {
+                    continue;
+                }
+
+                // bundles at target that do not face this one never will
+                // this step, so each edge's scan picks up where it stopped
+                int edge = graph.getNeighborStart(current);
+
+                while (graph.getNeighbor(edge) != target) {
+                    edge++;
+                }
+
+                if (edgeStamps[edge] != step) {
+                    edgeStamps[edge] = step;
+                    edgeCursors[edge] = firstBlocked[target];
+                }
+
+                while (bundle.waited > 0) {
+
+                    int i = edgeCursors[edge];
+
+                    while (i >= 0 && (blocked.get(i).waited == 0 || getNode(blocked.get(i), blocked.get(i).position + 1) != current)) {
+                        i = nextBlocked[i];
+                    }
+
+                    edgeCursors[edge] = i;
+
+                    if (i < 0) {
+                        break;
                     }
 
-                    usageOnePeriodAllSteps.add(usageOnePeriodOneStep);
+                    Bundle facing = blocked.get(i);
+                    int count = Math.min(getWeight(bundle), getWeight(facing));
+
+                    // both tiles are counted once the trade is done
+                    Bundle passing = release(bundle, count, false);
+                    Bundle passed = release(facing, count, true);
+
+                    checkCapacity(passing);
+                    checkCapacity(passed);
                 }
+            }
+        }
 
-                for (int n = 0; n < pathOneActorOnePeriod.size(); n++) {
+        // bundles blocked round a cycle of tiles, each waiting for the next,
+        // pass an actor each on to the next tile, which leaves every tile as
+        // full as it was; if nothing else could move, every blocked bundle
+        // waits for a full tile whose own bundles are all blocked too, so
+        // following them has to come back round and something always moves
+        private void releaseCycles(List<Bundle> blocked, int step) {
 
-                    Map<Tile, Integer> usageOnePeriodOneStep = usageOnePeriodAllSteps.get(n);
+            int firstWalk = walkCount + 1;
 
-                    Tile currentTile = pathOneActorOnePeriod.get(n);
+            for (Bundle bundle : blocked) {
 
-                    int oldUsage = usageOnePeriodOneStep.get(currentTile);
-                    int newUsage = oldUsage + 1;
+                int node = getNode(bundle, bundle.position);
 
-                    usageOnePeriodOneStep.put(currentTile, newUsage);
-                    maxUsage = Math.max(newUsage, maxUsage);
+                if (bundle.waited == 0 || walkIds[node] >= firstWalk) {
+                    continue;
+                }
+
+                int walk = ++walkCount;
+
+                // one bundle per tile is followed, so each tile is left once
+                while (walkIds[node] < firstWalk) {
+
+                    walkIds[node] = walk;
+                    waitingAt[node] = findWaiting(blocked, node, step);
+
+                    if (waitingAt[node] < 0) {
+                        break;
+                    }
+
+                    Bundle waiting = blocked.get(waitingAt[node]);
+                    node = getNode(waiting, waiting.position + 1);
+                }
+
+                if (walkIds[node] != walk || waitingAt[node] < 0) {
+                    continue;
+                }
+
+                int first = node;
+                cycle.clear();
+
+                do {
+                    Bundle waiting = blocked.get(waitingAt[node]);
+
+                    cycle.add(waiting);
+                    node = getNode(waiting, waiting.position + 1);
+                }
+                while (node != first);
+
+                for (int i = 0; i < cycle.size(); i++) {
+                    cycle.set(i, release(cycle.get(i), 1, true));
+                }
+
+                for (Bundle passing : cycle) {
+                    checkCapacity(passing);
                 }
             }
         }
+
+        // the index in blocked of a bundle still waiting at node, or -1
+        private int findWaiting(List<Bundle> blocked, int node, int step) {
+
+            if (blockedStamps[node] != step) {
+                return -1;
+            }
+
+            int i = firstBlocked[node];
+
+            while (i >= 0 && blocked.get(i).waited == 0) {
+                i = nextBlocked[i];
+            }
+
+            return i;
+        }
+    }
+
+    // one forward pass per period decides every wait from the occupancy the
+    // actors actually produce, so usage only has to be counted once, after it
+    //
+    // floor tiles hold at most tileCapacity actors a step; room tiles hold
+    // any number
+    private void simulateCongestion() {
+
+        byte floorType = grid.getTypeOf("floor");
+        boolean[] isBounded = new boolean[graph.getNodeCount()];
+        int floorCount = 0;
+
+        for (int node = 0; node < isBounded.length; node++) {
+            isBounded[node] = grid.getTypeAt(graph.getRow(node), graph.getCol(node)) == floorType;
+            floorCount += isBounded[node] ? 1 : 0;
+        }
+
+        tileCapacity = tileCapacitySetting;
+
+        if (tileCapacitySetting == AUTO_CAPACITY) {
+            long actorCount = trajectories.getActorCount();
+            tileCapacity = (int) Math.max(1, (GRID_CROWDING * actorCount + floorCount - 1) / Math.max(1, floorCount));
+        }
+
+        // periods are independent until their waits are written back
+        List<PeriodPass> passes = IntStream.range(0, lastTransitionPeriod).parallel()
+            .mapToObj(p -> {
+                PeriodPass pass = new PeriodPass(p, isBounded);
+                pass.run();
+                return pass;
+            })
+            .collect(Collectors.toList());
+
+        overCapacityCount = 0;
+
+        for (PeriodPass pass : passes) {
+            overCapacityCount += pass.overCapacityCount;
+            trajectories.setWalks(pass.period, pass.walks);
+        }
+    }
+
+    // the node of every stored tile, looked up once rather than once per group
+    private void findTileNodes() {
+
+        graph = grid.getNeighborGraph();
+
+        int[] tileIndices = trajectories.getTileIndices();
+        tileNodes = new int[trajectories.getTileCount()];
+
+        Arrays.parallelSetAll(tileNodes, i -> graph.getNode(tileIndices[i]));
+    }
+
+    private void generateTileUsage() {
+
+        step = 0;
+
+        tileUsage = new OccupancyTimeline(graph.getNodeCount(), trajectories, tileNodes);
+        maxUsage = tileUsage.getMaxCount();
+
+        maxStepsAllPeriods = new int[lastTransitionPeriod];
+
+        for (int p = 0; p < lastTransitionPeriod; p++) {
+            maxStepsAllPeriods[p] = tileUsage.getStepCount(p);
+        }
     }
 
     public List<List<Integer>> getTotalUsageAt(Tile tile) {
@@ -167,6 +811,18 @@ public class LocationData {
     public int getStep()    { return step;                       }
     public int getMaxStep() { return maxStepsAllPeriods[period]; }
 
+    public int getPeriodCount()         { return lastTransitionPeriod;       }
+    public int getMaxStepAt(int period) { return maxStepsAllPeriods[period]; }
+    public int getMaxUsage()            { return maxUsage;                   }
+
+    public int getMaxUsageAt(int period) { return tileUsage.getMaxCount(period); }
+
+    public int getTileCapacity()       { return tileCapacity;      }
+    public long getOverCapacityCount() { return overCapacityCount; }
+
+    // the graph usage is counted over, as it was when the paths were found
+    public NeighborGraph getGraph() { return graph; }
+
     public boolean increaseStep() {
         if (!canIncreaseStep()) {
             return false;
@@ -193,30 +849,42 @@ public class LocationData {
         return false;
     }
 
+    // tiles that were walls when the paths were found read as zero
     public int getUsageAt(int period, int step, Tile tile) {
 
-        return tileUsage.get(period).get(step).get(tile);
+        int node = graph.getNode(tile.getIndex());
+        return node < 0 ? 0 : tileUsage.get(period, step, node);
     }
 
-    private double getScaleFactorAt(int period, int step, Tile tile) {
+    // the usage of every node of getGraph() at once, for readers that want
+    // a whole step; usage must hold getGraph().getNodeCount() entries
+    public void copyUsageAt(int period, int step, int[] usage) {
+        tileUsage.copyFrame(period, step, usage);
+    }
 
-        int usage = getUsageAt(period, step, tile);
+    // tile indices whose usage differs from the step before, so a display
+    // stepping through a period only has to redraw those
+    public int[] getChangedTileIndicesAt(int period, int step) {
 
-        double scaleFactor = ((double) usage) / ((double) maxUsage);
-        scaleFactor = (0.7 * Math.sqrt(Math.sqrt(scaleFactor))) + 0.3;
+        int[] nodes = tileUsage.getChangedNodes(period, step);
+        int[] tileIndices = new int[nodes.length];
 
-        return scaleFactor;
+        for (int i = 0; i < nodes.length; i++) {
+            tileIndices[i] = graph.getTileIndex(nodes[i]);
+        }
+
+        return tileIndices;
     }
 
-    public Color getIntensityAt(int period, int step, Tile tile) {
+    public double getScaleFactorAt(int period, int step, Tile tile) {
+        return getScaleFactor(getUsageAt(period, step, tile));
+    }
 
-        double scaleFactor = getScaleFactorAt(period, step, tile);
+    private double getScaleFactor(int usage) {
 
-        float red = (float) Math.max(0.0, -1.0 + (2.0 * scaleFactor));
-        float green = (float) Math.min(1.0, 2.0 - (2.0 * scaleFactor));
+        double scaleFactor = ((double) usage) / ((double) maxUsage);
+        scaleFactor = (0.7 * Math.sqrt(Math.sqrt(scaleFactor))) + 0.3;
 
-        Color intensity = Color.color(red, green, 0);
-        return intensity;
+        return scaleFactor;
     }
 }
-
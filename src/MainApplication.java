@@ -12,9 +12,6 @@ import javafx.scene.control.Alert.AlertType;
 
 import javafx.scene.layout.*;
 
-import java.util.Scanner;
-import java.util.Arrays;
-
 import java.io.File;
 import java.io.IOException;
 import java.io.FileNotFoundException;
@@ -83,11 +80,7 @@ public class MainApplication extends Application {
         boolean fileNeeded = true;
         boolean hasCanceled = false;
 
-        String simulationName = "";
-        String[][] attributes = null;
-
-        int width = -1;
-        int height = -1;
+        NetworkFile network = null;
 
         while (fileNeeded && !hasCanceled) {
 
@@ -106,33 +99,7 @@ public class MainApplication extends Application {
             fileNeeded = !fileToOpen.getName().endsWith(".ntwk");
 
             try {
-                
-                if (fileNeeded) {
-                    throw new RuntimeException(
-                        "File has improper extension (seeking .ntwk). Try again."
-                    );
-                }
-
-                Scanner scan = new Scanner(fileToOpen);
-                
-                if (!("ntwk_file".equals(scan.next()))) {
-                    throw new RuntimeException(
-                        "File has improper header and may be corrupted. Try again."
-                    );
-                }
-
-                simulationName = scan.next();
-
-                width = scan.nextInt();
-                height = scan.nextInt();
-                
-                attributes = new String[height][width];
-
-                for (int r = 0; r < height; r++) {
-                    for (int c = 0; c < width; c++) {
-                        attributes[r][c] = scan.next();
-                    }
-                }
+                network = NetworkFile.read(fileToOpen);
             }
             catch (FileNotFoundException ex) {
                 
@@ -171,7 +138,7 @@ public class MainApplication extends Application {
         }
         
         if (hasCanceled) return;
-        loadCachedSimulation(width, height, simulationName, attributes);
+        loadCachedSimulation(network);
     }
 
     public void promptForNew() {
@@ -258,12 +225,9 @@ public class MainApplication extends Application {
         promptStage.show();
     }
 
-    public void loadCachedSimulation(int width,
-                                     int height,
-                                     String simulationName,
-                                     String[][] attributes) {
+    public void loadCachedSimulation(NetworkFile network) {
 
-        Simulator simulator = new Simulator(width, height, simulationName, attributes);
+        Simulator simulator = new Simulator(network.getSimulationName(), network.getGrid());
         simulator.show();
         loaderStage.hide();
     }
@@ -272,11 +236,7 @@ public class MainApplication extends Application {
                                    int height,
                                    String simulationName) {
 
-        String[][] attributes = new String[height][width];
-        for (String[] row : attributes) {
-            Arrays.fill(row, "wall");
-        }
-        
-        loadCachedSimulation(width, height, simulationName, attributes);
+        // a new grid starts out all wall
+        loadCachedSimulation(new NetworkFile(simulationName, new Grid(width, height)));
     }
 }
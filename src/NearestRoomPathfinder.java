@@ -0,0 +1,47 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Walks the grid's flow field for the destination's tile type, so a leg that
+// heads for the nearest tile of a room type needs no search at all.
+//
+// A leg whose destination is not the nearest tile of its type from the
+// origin, for instance one routed before the grid was edited, falls back to
+// an exact route table. Both are safe to share between threads.
+public class NearestRoomPathfinder implements Pathfinder {
+
+    private final Grid grid;
+    private final NeighborGraph graph;
+    private final RoomRouteTable fallback;
+
+    private final AtomicLong fallbackCount;
+
+    // targets are every node a leg may end at
+    public NearestRoomPathfinder(Grid grid, NeighborGraph graph, int[] targets) {
+        this.grid = grid;
+        this.graph = graph;
+        this.fallback = new RoomRouteTable(graph, targets);
+        this.fallbackCount = new AtomicLong();
+    }
+
+    public long getFallbackCount() { return fallbackCount.get(); }
+
+    @Override
+    public long getExpandedCount() { return fallback.getExpandedCount(); }
+
+    @Override
+    public int[] findPath(int from, int to) {
+
+        FlowField field = grid.getFlowField(grid.getTypeAt(graph.getRow(to), graph.getCol(to)));
+
+        if (field.getGraph() == graph && field.getDistance(from) >= 0) {
+
+            int[] path = field.findPath(from);
+
+            if (path[path.length - 1] == to) {
+                return path;
+            }
+        }
+
+        fallbackCount.incrementAndGet();
+        return fallback.findPath(from, to);
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.Arrays;
+
+// Compressed-sparse-row adjacency over the traversable tiles of a grid.
+//
+// Every traversable tile is given a node id equal to its rank in row-major
+// order. The neighbors of node n are neighbors[offsets[n]] up to (but not
+// including) neighbors[offsets[n + 1]], listed in up, down, left, right
+// order. The graph is an immutable snapshot; the grid builds a new one after
+// traversability changes.
+public class NeighborGraph {
+
+    private final int width;
+
+    private final int[] tileIndices;
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    public NeighborGraph(Grid grid) {
+
+        this.width = grid.getWidth();
+
+        int nodeCount = grid.getValidTileCount();
+
+        tileIndices = new int[nodeCount];
+        offsets = new int[nodeCount + 1];
+
+        int node = 0;
+        int edgeCount = 0;
+
+        for (int i = grid.nextValidIndex(0); i >= 0; i = grid.nextValidIndex(i + 1)) {
+
+            int r = i / width;
+            int c = i % width;
+
+            tileIndices[node++] = i;
+
+            if (grid.isTraversableAt(r - 1, c)) edgeCount++;
+            if (grid.isTraversableAt(r + 1, c)) edgeCount++;
+            if (grid.isTraversableAt(r, c - 1)) edgeCount++;
+            if (grid.isTraversableAt(r, c + 1)) edgeCount++;
+        }
+
+        neighbors = new int[edgeCount];
+
+        int edge = 0;
+
+        for (node = 0; node < nodeCount; node++) {
+
+            offsets[node] = edge;
+
+            int index = tileIndices[node];
+            int r = index / width;
+            int c = index % width;
+
+            if (grid.isTraversableAt(r - 1, c)) neighbors[edge++] = getNode(index - width);
+            if (grid.isTraversableAt(r + 1, c)) neighbors[edge++] = getNode(index + width);
+            if (grid.isTraversableAt(r, c - 1)) neighbors[edge++] = node - 1;
+            if (grid.isTraversableAt(r, c + 1)) neighbors[edge++] = node + 1;
+        }
+
+        offsets[nodeCount] = edge;
+    }
+
+    public int getNodeCount() { return tileIndices.length; }
+    public int getEdgeCount() { return neighbors.length;   }
+
+    public int getTileIndex(int node) { return tileIndices[node];         }
+    public int getRow(int node)       { return tileIndices[node] / width; }
+    public int getCol(int node)       { return tileIndices[node] % width; }
+
+    // returns -1 when the tile is not traversable
+    public int getNode(int tileIndex) {
+
+        int node = Arrays.binarySearch(tileIndices, tileIndex);
+        return node < 0 ? -1 : node;
+    }
+
+    public int getNode(int row, int col) {
+        return getNode(row * width + col);
+    }
+
+    public int getNeighborStart(int node) { return offsets[node];     }
+    public int getNeighborEnd(int node)   { return offsets[node + 1]; }
+    public int getNeighbor(int edge)      { return neighbors[edge];   }
+
+    public int getDegree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    // breadth-first distance of every node to the nearest of the sources,
+    // -1 where none of them can be reached
+    public int[] getDistancesFrom(int[] sources) {
+
+        int[] distances = new int[getNodeCount()];
+        int[] queue = new int[getNodeCount()];
+
+        Arrays.fill(distances, -1);
+
+        int head = 0;
+        int tail = 0;
+
+        for (int source : sources) {
+            if (distances[source] < 0) {
+                distances[source] = 0;
+                queue[tail++] = source;
+            }
+        }
+
+        while (head != tail) {
+
+            int current = queue[head++];
+
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+
+                if (distances[neighbors[e]] < 0) {
+                    distances[neighbors[e]] = distances[current] + 1;
+                    queue[tail++] = neighbors[e];
+                }
+            }
+        }
+
+        return distances;
+    }
+}
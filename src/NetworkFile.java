@@ -0,0 +1,84 @@
+import java.util.Scanner;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.FileNotFoundException;
+
+import java.lang.RuntimeException;
+
+// Reads and writes the .ntwk format:
+//
+//     ntwk_file
+//     <simulation name>
+//     <width> <height>
+//     <attribute> ... (height lines of width attributes)
+public class NetworkFile {
+
+    private final String simulationName;
+    private final Grid grid;
+
+    public NetworkFile(String simulationName, Grid grid) {
+        this.simulationName = simulationName;
+        this.grid = grid;
+    }
+
+    public String getSimulationName() { return simulationName; }
+    public Grid getGrid()             { return grid;           }
+
+    public static NetworkFile read(File file) throws FileNotFoundException {
+
+        if (!file.getName().endsWith(".ntwk")) {
+            throw new RuntimeException(
+                "File has improper extension (seeking .ntwk). Try again."
+            );
+        }
+
+        Scanner scan = new Scanner(file);
+
+        try {
+
+            if (!("ntwk_file".equals(scan.next()))) {
+                throw new RuntimeException(
+                    "File has improper header and may be corrupted. Try again."
+                );
+            }
+
+            String simulationName = scan.next();
+
+            int width = scan.nextInt();
+            int height = scan.nextInt();
+
+            Grid grid = new Grid(width, height);
+
+            for (int r = 0; r < height; r++) {
+                for (int c = 0; c < width; c++) {
+                    grid.setAttributeAt(r, c, scan.next());
+                }
+            }
+
+            return new NetworkFile(simulationName, grid);
+        }
+        finally {
+            scan.close();
+        }
+    }
+
+    public void write(File file) throws FileNotFoundException {
+
+        PrintWriter writer = new PrintWriter(file);
+
+        writer.println("ntwk_file");
+        writer.println(simulationName);
+        writer.println(grid.getWidth() + " " + grid.getHeight());
+
+        for (int r = 0; r < grid.getHeight(); r++) {
+            for (int c = 0; c < grid.getWidth(); c++) {
+                writer.print(grid.getAttributeAt(r, c) + " ");
+            }
+            writer.println();
+        }
+
+        writer.flush();
+        writer.close();
+    }
+}
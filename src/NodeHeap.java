@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+// Binary min-heap of graph nodes keyed by (priority, tiebreak), stored in
+// parallel int arrays so pushes and pops never box. Stale entries are not
+// removed; searches skip them when they surface.
+public class NodeHeap {
+
+    private int[] nodes;
+    private int[] priorities;
+    private int[] tiebreaks;
+    private int size;
+
+    public NodeHeap() {
+        this.nodes = new int[64];
+        this.priorities = new int[64];
+        this.tiebreaks = new int[64];
+    }
+
+    public void clear()       { size = 0;         }
+    public boolean isEmpty()  { return size == 0; }
+
+    public int peekNode()     { return nodes[0];      }
+    public int peekPriority() { return priorities[0]; }
+
+    private boolean isLess(int lhs, int rhs) {
+
+        if (priorities[lhs] != priorities[rhs]) {
+            return priorities[lhs] < priorities[rhs];
+        }
+
+        return tiebreaks[lhs] < tiebreaks[rhs];
+    }
+
+    private void swap(int lhs, int rhs) {
+
+        int node = nodes[lhs];
+        int priority = priorities[lhs];
+        int tiebreak = tiebreaks[lhs];
+
+        nodes[lhs] = nodes[rhs];
+        priorities[lhs] = priorities[rhs];
+        tiebreaks[lhs] = tiebreaks[rhs];
+
+        nodes[rhs] = node;
+        priorities[rhs] = priority;
+        tiebreaks[rhs] = tiebreak;
+    }
+
+    public void push(int node, int priority, int tiebreak) {
+
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            priorities = Arrays.copyOf(priorities, size * 2);
+            tiebreaks = Arrays.copyOf(tiebreaks, size * 2);
+        }
+
+        int i = size++;
+
+        nodes[i] = node;
+        priorities[i] = priority;
+        tiebreaks[i] = tiebreak;
+
+        while (i > 0 && isLess(i, (i - 1) / 2)) {
+            swap(i, (i - 1) / 2);
+            i = (i - 1) / 2;
+        }
+    }
+
+    public int pop() {
+
+        int top = nodes[0];
+
+        swap(0, --size);
+
+        int i = 0;
+
+        while (true) {
+
+            int left = 2 * i + 1;
+            int right = left + 1;
+            int smallest = i;
+
+            if (left < size && isLess(left, smallest)) {
+                smallest = left;
+            }
+
+            if (right < size && isLess(right, smallest)) {
+                smallest = right;
+            }
+
+            if (smallest == i) {
+                break;
+            }
+
+            swap(i, smallest);
+            i = smallest;
+        }
+
+        return top;
+    }
+}
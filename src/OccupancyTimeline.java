@@ -0,0 +1,427 @@
+import java.util.Arrays;
+
+import java.util.stream.IntStream;
+
+// How many actors stand on each node at each step of each period, stored as
+// what changes between steps.
+//
+// Counts come from each period's walks, so waits are read as runs and never
+// expanded into copies of the paths.
+//
+// Step n of a period is kept as the list of (node, change) pairs that turn
+// the counts at step n - 1 into those at step n, so only the nodes actors
+// enter or leave are recorded. Every KEYFRAME_INTERVAL steps the full set of
+// non-zero counts is kept as well. Any frame is rebuilt from the keyframe at
+// or before it, and a cursor frame makes reading neighbouring steps cost one
+// change list per step moved.
+//
+// Reads move the cursor, so one timeline must not be read from two threads.
+public class OccupancyTimeline {
+
+    public static final int KEYFRAME_INTERVAL = 32;
+
+    private final int nodeCount;
+    private final int[] stepCounts;
+    private final int[] maxCounts;
+
+    // 1st idx : p'th period
+    // step n changes deltaNodes[p][deltaStarts[p][n] .. deltaStarts[p][n + 1])
+    private final int[][] deltaStarts;
+    private final int[][] deltaNodes;
+    private final int[][] deltaAmounts;
+
+    // 1st idx : p'th period
+    // keyframe k, the counts at step k * KEYFRAME_INTERVAL, is
+    // keyframeNodes[p][keyframeStarts[p][k] .. keyframeStarts[p][k + 1])
+    private final int[][] keyframeStarts;
+    private final int[][] keyframeNodes;
+    private final int[][] keyframeCounts;
+
+    // the counts at (framePeriod, frameStep)
+    private final int[] frame;
+    private int framePeriod;
+    private int frameStep;
+
+    // nodes[i] is the node of store.getTileIndices()[i]; every period needs
+    // its walks
+    public OccupancyTimeline(int nodeCount, TrajectoryStore store, int[] nodes) {
+
+        int periodCount = store.getPeriodCount();
+
+        this.nodeCount = nodeCount;
+        this.stepCounts = new int[periodCount];
+
+        this.deltaStarts = new int[periodCount][];
+        this.deltaNodes = new int[periodCount][];
+        this.deltaAmounts = new int[periodCount][];
+
+        this.keyframeStarts = new int[periodCount][];
+        this.keyframeNodes = new int[periodCount][];
+        this.keyframeCounts = new int[periodCount][];
+
+        this.maxCounts = new int[periodCount];
+        this.frame = new int[nodeCount];
+
+        // periods share nothing but the store, so they are built side by side
+        IntStream.range(0, periodCount).parallel().forEach(p -> buildPeriod(p, store, nodes));
+
+        this.framePeriod = -1;
+    }
+
+    public int getNodeCount()           { return nodeCount;          }
+    public int getPeriodCount()         { return stepCounts.length;  }
+    public int getStepCount(int period) { return stepCounts[period]; }
+    public int getMaxCount(int period)  { return maxCounts[period];  }
+
+    public int getMaxCount() {
+        return Arrays.stream(maxCounts).max().orElse(0);
+    }
+
+    private void buildPeriod(int period, TrajectoryStore store, int[] nodes) {
+
+        PeriodWalks walks = store.getWalks(period);
+
+        if (walks == null) {
+            throw new IllegalArgumentException("Period " + period + " has no walks to count");
+        }
+
+        int[][] moves = findMoves(store, walks, nodes);
+        int[] moveStarts = moves[0];
+
+        int stepCount = moveStarts.length - 1;
+        stepCounts[period] = stepCount;
+
+        // the changes of one step only depend on that step's moves, so
+        // keyframe intervals are added up side by side; each task takes every
+        // chunkCount'th interval and allocates its scratch once
+        int keyframeCount = (stepCount + KEYFRAME_INTERVAL - 1) / KEYFRAME_INTERVAL;
+        int chunkCount = Math.min(keyframeCount, 4 * Runtime.getRuntime().availableProcessors());
+
+        int[][][] intervals = new int[keyframeCount][][];
+
+        IntStream.range(0, chunkCount).parallel().forEach(c -> {
+
+            long[] sums = new long[nodeCount];
+            int[] touched = new int[nodeCount];
+            int[] lastTouched = new int[nodeCount];
+
+            Arrays.fill(lastTouched, -1);
+
+            for (int k = c; k < keyframeCount; k += chunkCount) {
+                intervals[k] = findChanges(
+                    k * KEYFRAME_INTERVAL, Math.min((k + 1) * KEYFRAME_INTERVAL, stepCount),
+                    moves, sums, touched, lastTouched
+                );
+            }
+        });
+
+        // then one pass adds them up for the keyframes and the maximum
+        int changeCount = 0;
+
+        for (int[][] interval : intervals) {
+            changeCount += interval[1].length;
+        }
+
+        int[] starts = new int[stepCount + 1];
+        int[] changedNodes = new int[changeCount];
+        int[] changes = new int[changeCount];
+
+        int[] counts = new int[nodeCount];
+        int periodMax = 0;
+
+        // the nodes with a non-zero count, kept up from the changes so a
+        // keyframe never scans every node; occupiedSlots[n] is n's position
+        int[] occupied = new int[nodeCount];
+        int[] occupiedSlots = new int[nodeCount];
+        int occupiedCount = 0;
+
+        int[] frameStarts = new int[keyframeCount + 1];
+        int[] frameNodes = new int[16];
+        int[] frameCounts = new int[16];
+        int frameEntryCount = 0;
+
+        int next = 0;
+
+        for (int k = 0; k < keyframeCount; k++) {
+
+            int[] intervalStarts = intervals[k][0];
+            int[] intervalNodes = intervals[k][1];
+            int[] intervalChanges = intervals[k][2];
+
+            for (int n = 0; n + 1 < intervalStarts.length; n++) {
+
+                starts[k * KEYFRAME_INTERVAL + n] = next;
+
+                for (int i = intervalStarts[n]; i < intervalStarts[n + 1]; i++, next++) {
+
+                    int node = intervalNodes[i];
+
+                    changedNodes[next] = node;
+                    changes[next] = intervalChanges[i];
+
+                    if (counts[node] == 0) {
+                        occupied[occupiedCount] = node;
+                        occupiedSlots[node] = occupiedCount++;
+                    }
+
+                    counts[node] += intervalChanges[i];
+                    periodMax = Math.max(periodMax, counts[node]);
+
+                    if (counts[node] == 0) {
+                        int last = occupied[--occupiedCount];
+                        occupied[occupiedSlots[node]] = last;
+                        occupiedSlots[last] = occupiedSlots[node];
+                    }
+                }
+
+                if (n == 0) {
+
+                    frameStarts[k] = frameEntryCount;
+
+                    if (frameEntryCount + occupiedCount > frameNodes.length) {
+                        int length = Math.max(frameEntryCount + occupiedCount, frameNodes.length * 2);
+                        frameNodes = Arrays.copyOf(frameNodes, length);
+                        frameCounts = Arrays.copyOf(frameCounts, length);
+                    }
+
+                    for (int i = 0; i < occupiedCount; i++) {
+                        frameNodes[frameEntryCount] = occupied[i];
+                        frameCounts[frameEntryCount++] = counts[occupied[i]];
+                    }
+                }
+            }
+        }
+
+        starts[stepCount] = changeCount;
+        frameStarts[keyframeCount] = frameEntryCount;
+
+        maxCounts[period] = periodMax;
+
+        deltaStarts[period] = starts;
+        deltaNodes[period] = changedNodes;
+        deltaAmounts[period] = changes;
+
+        keyframeStarts[period] = frameStarts;
+        keyframeNodes[period] = Arrays.copyOf(frameNodes, frameEntryCount);
+        keyframeCounts[period] = Arrays.copyOf(frameCounts, frameEntryCount);
+    }
+
+    // every move of every walk as { step starts, nodes, changes }, with step
+    // n's moves at [starts[n], starts[n + 1]); a walk adds its weight to a
+    // node on the step it steps on and takes it back off on the step it
+    // steps off, its last tile included unless that is the period's end
+    //
+    // a walk's wait runs are linked from the last back, so each walk is
+    // followed backward from the step it leaves its last tile; the moves are
+    // counted in a first run over the walks and written in a second
+    private static int[][] findMoves(TrajectoryStore store, PeriodWalks walks, int[] nodes) {
+
+        int walkCount = walks.getWalkCount();
+        int[] endSteps = new int[walkCount];
+        int stepCount = 0;
+
+        for (int w = 0; w < walkCount; w++) {
+            endSteps[w] = store.getTrajectoryLength(walks.getTrajectory(w)) + walks.getTotalWait(walks.getLastWait(w));
+            stepCount = Math.max(stepCount, endSteps[w]);
+        }
+
+        int[] starts = new int[stepCount + 1];
+        int[] next = null;
+        int[] movedNodes = null;
+        int[] changes = null;
+
+        for (int fill = 0; fill < 2; fill++) {
+
+            for (int w = 0; w < walkCount; w++) {
+
+                int offset = store.getTrajectoryOffset(walks.getTrajectory(w));
+                int length = store.getTrajectoryLength(walks.getTrajectory(w));
+                int weight = walks.getWeight(w);
+                int wait = walks.getLastWait(w);
+                int step = endSteps[w];
+
+                for (int position = length; position >= 0; position--) {
+
+                    // step is when the walk steps onto position, and off the
+                    // one before it
+                    if (step < stepCount) {
+
+                        if (fill == 0) {
+                            starts[step] += (position < length ? 1 : 0) + (position > 0 ? 1 : 0);
+                        }
+                        else {
+
+                            if (position < length) {
+                                movedNodes[next[step]] = nodes[offset + position];
+                                changes[next[step]++] = weight;
+                            }
+
+                            if (position > 0) {
+                                movedNodes[next[step]] = nodes[offset + position - 1];
+                                changes[next[step]++] = -weight;
+                            }
+                        }
+                    }
+
+                    if (position > 0) {
+
+                        if (wait >= 0 && walks.getWaitPosition(wait) == position - 1) {
+                            step -= walks.getWaitLength(wait);
+                            wait = walks.getPreviousWait(wait);
+                        }
+
+                        step--;
+                    }
+                }
+            }
+
+            if (fill == 0) {
+
+                int total = 0;
+
+                for (int n = 0; n < stepCount; n++) {
+                    int count = starts[n];
+                    starts[n] = total;
+                    total += count;
+                }
+
+                starts[stepCount] = total;
+
+                next = Arrays.copyOf(starts, stepCount);
+                movedNodes = new int[total];
+                changes = new int[total];
+            }
+        }
+
+        return new int[][] { starts, movedNodes, changes };
+    }
+
+    // the changes of steps [start, end), as { step starts, nodes, changes }
+    // with step start + n's changes at [starts[n], starts[n + 1])
+    //
+    // the moves of a step are summed per node and only non-zero sums are
+    // kept, so a node one walk leaves as another enters does not change
+    //
+    // sums, touched and lastTouched are the caller's scratch, sized to the
+    // nodes; sums comes back all zero, and lastTouched only needs to hold
+    // steps before start
+    private int[][] findChanges(int start, int end, int[][] moves, long[] sums, int[] touched, int[] lastTouched) {
+
+        int[] moveStarts = moves[0];
+        int[] movedNodes = moves[1];
+        int[] moveChanges = moves[2];
+
+        int[] starts = new int[end - start + 1];
+        int[] changedNodes = new int[16];
+        int[] changes = new int[16];
+        int changeCount = 0;
+
+        for (int n = start; n < end; n++) {
+
+            int touchedCount = 0;
+
+            for (int i = moveStarts[n]; i < moveStarts[n + 1]; i++) {
+
+                int node = movedNodes[i];
+
+                if (lastTouched[node] != n) {
+                    lastTouched[node] = n;
+                    touched[touchedCount++] = node;
+                }
+
+                sums[node] += moveChanges[i];
+            }
+
+            starts[n - start] = changeCount;
+
+            for (int i = 0; i < touchedCount; i++) {
+
+                int node = touched[i];
+
+                if (sums[node] != 0) {
+
+                    if (changeCount == changedNodes.length) {
+                        changedNodes = Arrays.copyOf(changedNodes, changedNodes.length * 2);
+                        changes = Arrays.copyOf(changes, changes.length * 2);
+                    }
+
+                    changedNodes[changeCount] = node;
+                    changes[changeCount++] = (int) sums[node];
+                }
+
+                sums[node] = 0;
+            }
+        }
+
+        starts[end - start] = changeCount;
+
+        return new int[][] {
+            starts, Arrays.copyOf(changedNodes, changeCount), Arrays.copyOf(changes, changeCount)
+        };
+    }
+
+    public int get(int period, int step, int node) {
+
+        seek(period, step);
+        return frame[node];
+    }
+
+    // the count of every node at (period, step), copied into counts
+    public void copyFrame(int period, int step, int[] counts) {
+
+        seek(period, step);
+        System.arraycopy(frame, 0, counts, 0, nodeCount);
+    }
+
+    // nodes whose count at step differs from the count at step - 1; at step 0
+    // these are all the nodes anyone stands on
+    public int[] getChangedNodes(int period, int step) {
+        return Arrays.copyOfRange(deltaNodes[period], deltaStarts[period][step], deltaStarts[period][step + 1]);
+    }
+
+    // moves the cursor to (period, step), walking change lists from wherever
+    // is closer, the cursor or the keyframe at or before the step
+    public void seek(int period, int step) {
+
+        if (step < 0 || step >= stepCounts[period]) {
+            throw new IndexOutOfBoundsException("Step " + step + " of a period of " + stepCounts[period]);
+        }
+
+        if (period != framePeriod || Math.abs(step - frameStep) > step % KEYFRAME_INTERVAL) {
+            loadKeyframe(period, step / KEYFRAME_INTERVAL);
+        }
+
+        while (frameStep < step) {
+            applyChanges(++frameStep, 1);
+        }
+
+        while (frameStep > step) {
+            applyChanges(frameStep--, -1);
+        }
+    }
+
+    private void loadKeyframe(int period, int keyframe) {
+
+        Arrays.fill(frame, 0);
+
+        int[] nodes = keyframeNodes[period];
+        int[] counts = keyframeCounts[period];
+
+        for (int i = keyframeStarts[period][keyframe]; i < keyframeStarts[period][keyframe + 1]; i++) {
+            frame[nodes[i]] = counts[i];
+        }
+
+        framePeriod = period;
+        frameStep = keyframe * KEYFRAME_INTERVAL;
+    }
+
+    private void applyChanges(int step, int sign) {
+
+        int[] nodes = deltaNodes[framePeriod];
+        int[] amounts = deltaAmounts[framePeriod];
+
+        for (int i = deltaStarts[framePeriod][step]; i < deltaStarts[framePeriod][step + 1]; i++) {
+            frame[nodes[i]] += sign * amounts[i];
+        }
+    }
+}
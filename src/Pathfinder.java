@@ -0,0 +1,26 @@
+// Finds a shortest path between two nodes of a grid's NeighborGraph.
+//
+// A path lists every node from the start to the target inclusive, so a path
+// of n nodes takes n - 1 moves. All implementations return paths of the same
+// length for the same endpoints, though they may break ties differently.
+public interface Pathfinder {
+
+    // throws a RuntimeException when the target cannot be reached
+    int[] findPath(int from, int to);
+
+    // one path per target, all starting at the same node; searches that can
+    // reach every target in a single pass override this
+    default int[][] findPaths(int from, int[] targets) {
+
+        int[][] paths = new int[targets.length][];
+
+        for (int i = 0; i < targets.length; i++) {
+            paths[i] = findPath(from, targets[i]);
+        }
+
+        return paths;
+    }
+
+    // total nodes taken off the frontier and expanded over all searches
+    long getExpandedCount();
+}
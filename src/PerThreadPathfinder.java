@@ -0,0 +1,79 @@
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.util.function.Supplier;
+
+// Lends every search running at the same time its own Pathfinder, so
+// searches with per-search scratch arrays can run side by side without
+// sharing them.
+//
+// Idle pathfinders wait in a pool owned by this object rather than in
+// thread locals, so their scratch is never left behind in worker threads:
+// it goes away with this object once the graph it was sized for is
+// replaced. The pool only grows to the most searches that ever ran at once.
+public class PerThreadPathfinder implements Pathfinder {
+
+    private final Supplier<Pathfinder> factory;
+    private final ConcurrentLinkedDeque<Pathfinder> idle;
+    private final AtomicInteger createdCount;
+
+    public PerThreadPathfinder(Supplier<Pathfinder> factory) {
+        this.factory = factory;
+        this.idle = new ConcurrentLinkedDeque<Pathfinder>();
+        this.createdCount = new AtomicInteger();
+    }
+
+    public int getThreadCount() { return createdCount.get(); }
+
+    // counts the searches that have finished
+    @Override
+    public long getExpandedCount() {
+
+        long total = 0;
+
+        for (Pathfinder pathfinder : idle) {
+            total += pathfinder.getExpandedCount();
+        }
+
+        return total;
+    }
+
+    // the most recently returned pathfinder first, while its scratch is warm
+    private Pathfinder borrow() {
+
+        Pathfinder pathfinder = idle.pollFirst();
+
+        if (pathfinder == null) {
+            createdCount.incrementAndGet();
+            pathfinder = factory.get();
+        }
+
+        return pathfinder;
+    }
+
+    @Override
+    public int[] findPath(int from, int to) {
+
+        Pathfinder pathfinder = borrow();
+
+        try {
+            return pathfinder.findPath(from, to);
+        }
+        finally {
+            idle.addFirst(pathfinder);
+        }
+    }
+
+    @Override
+    public int[][] findPaths(int from, int[] targets) {
+
+        Pathfinder pathfinder = borrow();
+
+        try {
+            return pathfinder.findPaths(from, targets);
+        }
+        finally {
+            idle.addFirst(pathfinder);
+        }
+    }
+}
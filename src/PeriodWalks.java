@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+// How the actors of one period walked their routed trajectories once
+// congestion had held some of them up.
+//
+// A walk is a trajectory of the TrajectoryStore, the number of actors on it
+// and the runs of steps they waited. A wait run is a position along the
+// trajectory and the extra steps spent there, linked to the walk's run
+// before it, so walks that split from one another share the runs from
+// before the split. A walk costs a few ints however long its trajectory is,
+// and a wait costs one run however long it lasts.
+public class PeriodWalks {
+
+    private int[] trajectories;
+    private int[] weights;
+    private int[] lastWaits;
+    private int walkCount;
+
+    private int[] waitPositions;
+    private int[] waitLengths;
+    private int[] previousWaits;
+    private int waitCount;
+
+    public PeriodWalks() {
+
+        this.trajectories = new int[16];
+        this.weights = new int[16];
+        this.lastWaits = new int[16];
+
+        this.waitPositions = new int[16];
+        this.waitLengths = new int[16];
+        this.previousWaits = new int[16];
+    }
+
+    public int getWalkCount() { return walkCount; }
+    public int getWaitCount() { return waitCount; }
+
+    public int getTrajectory(int walk) { return trajectories[walk]; }
+    public int getWeight(int walk)     { return weights[walk];      }
+
+    // the walk's latest wait run, -1 if it never waited
+    public int getLastWait(int walk) { return lastWaits[walk]; }
+
+    public int getWaitPosition(int wait) { return waitPositions[wait]; }
+    public int getWaitLength(int wait)   { return waitLengths[wait];   }
+    public int getPreviousWait(int wait) { return previousWaits[wait]; }
+
+    // returns the new run's id; previousWait is -1 for a first run
+    public int addWait(int position, int length, int previousWait) {
+
+        if (length <= 0) {
+            throw new IllegalArgumentException("A wait lasts at least one step");
+        }
+
+        if (waitCount == waitPositions.length) {
+            waitPositions = Arrays.copyOf(waitPositions, Math.max(16, waitCount * 2));
+            waitLengths = Arrays.copyOf(waitLengths, Math.max(16, waitCount * 2));
+            previousWaits = Arrays.copyOf(previousWaits, Math.max(16, waitCount * 2));
+        }
+
+        waitPositions[waitCount] = position;
+        waitLengths[waitCount] = length;
+        previousWaits[waitCount] = previousWait;
+
+        return waitCount++;
+    }
+
+    // returns the new walk's id
+    public int addWalk(int trajectory, int weight, int lastWait) {
+
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Every walk needs at least one actor");
+        }
+
+        if (walkCount == trajectories.length) {
+            trajectories = Arrays.copyOf(trajectories, Math.max(16, walkCount * 2));
+            weights = Arrays.copyOf(weights, Math.max(16, walkCount * 2));
+            lastWaits = Arrays.copyOf(lastWaits, Math.max(16, walkCount * 2));
+        }
+
+        trajectories[walkCount] = trajectory;
+        weights[walkCount] = weight;
+        lastWaits[walkCount] = lastWait;
+
+        return walkCount++;
+    }
+
+    public void addWeight(int walk, int weight) {
+        weights[walk] += weight;
+    }
+
+    // every step spent waiting from the given run back to the first
+    public int getTotalWait(int wait) {
+
+        int total = 0;
+
+        for (int w = wait; w >= 0; w = previousWaits[w]) {
+            total += waitLengths[w];
+        }
+
+        return total;
+    }
+
+    // whether two chains of runs hold the same waits; chains that split from
+    // one another share the runs from before the split, so the comparison
+    // stops where they meet
+    public boolean hasSameWaits(int lhs, int rhs) {
+
+        while (lhs >= 0 && rhs >= 0 && lhs != rhs) {
+
+            if (waitPositions[lhs] != waitPositions[rhs] || waitLengths[lhs] != waitLengths[rhs]) {
+                return false;
+            }
+
+            lhs = previousWaits[lhs];
+            rhs = previousWaits[rhs];
+        }
+
+        return lhs == rhs;
+    }
+
+    // drops the spare room left from growing, once every walk is added
+    public void trim() {
+
+        trajectories = Arrays.copyOf(trajectories, walkCount);
+        weights = Arrays.copyOf(weights, walkCount);
+        lastWaits = Arrays.copyOf(lastWaits, walkCount);
+
+        waitPositions = Arrays.copyOf(waitPositions, waitCount);
+        waitLengths = Arrays.copyOf(waitLengths, waitCount);
+        previousWaits = Arrays.copyOf(previousWaits, waitCount);
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.Map;
+import java.util.LinkedHashMap;
+
+import java.util.Arrays;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Shortest routes into a fixed set of target tiles, built with one BFS per
+// target and then shared by every path that ends there.
+//
+// For each target the table keeps a next-hop toward the target for every
+// node it can reach. The next hop is stored as the position (0-3) of the
+// neighbor within the node's CSR neighbor list, so it packs into two bits
+// and is followed without any search; one more bit marks the nodes that
+// reach the target at all. Distances are not kept, since walking the hops
+// gives them.
+//
+// Only the given targets, the room tiles, can be routed to, and at most
+// capacity bytes of fields are kept, least recently used first out; an
+// evicted field is simply built again. A finished field is never modified,
+// so one table can be shared by threads walking paths in parallel.
+public class RoomRouteTable implements Pathfinder {
+
+    // fields kept at most unless told otherwise, in bytes
+    public static final long DEFAULT_CAPACITY = 64L << 20;
+
+    private static class Field {
+        private byte[] nextHops;
+        private long[] isReached;
+    }
+
+    private final NeighborGraph graph;
+    private final int[] targets;
+    private final int maxFieldCount;
+    private final LinkedHashMap<Integer, Field> fields;
+
+    private final AtomicLong expandedCount;
+    private long evictionCount;
+
+    public RoomRouteTable(NeighborGraph graph, int[] targets) {
+        this(graph, targets, DEFAULT_CAPACITY);
+    }
+
+    public RoomRouteTable(NeighborGraph graph, int[] targets, long capacity) {
+
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Route table capacity cannot be negative");
+        }
+
+        long fieldBytes = ((graph.getNodeCount() + 3) >> 2) + 8L * ((graph.getNodeCount() + 63) >> 6);
+
+        this.graph = graph;
+        this.targets = Arrays.stream(targets).sorted().distinct().toArray();
+        this.maxFieldCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE, capacity / Math.max(1, fieldBytes)));
+        this.expandedCount = new AtomicLong();
+
+        this.fields = new LinkedHashMap<Integer, Field>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Field> eldest) {
+
+                if (size() <= maxFieldCount) {
+                    return false;
+                }
+
+                evictionCount++;
+                return true;
+            }
+        };
+    }
+
+    public int getMaxFieldCount() { return maxFieldCount; }
+
+    public synchronized int getFieldCount()     { return fields.size(); }
+    public synchronized long getEvictionCount() { return evictionCount; }
+
+    @Override
+    public long getExpandedCount() { return expandedCount.get(); }
+
+    private static int getHop(byte[] nextHops, int node) {
+        return (nextHops[node >> 2] >> ((node & 3) << 1)) & 3;
+    }
+
+    private static void setHop(byte[] nextHops, int node, int hop) {
+        nextHops[node >> 2] |= hop << ((node & 3) << 1);
+    }
+
+    // the BFS runs outside the lock, so building one field never holds up
+    // threads asking for another; two threads racing for the same target may
+    // both build it, and the first one stored wins
+    private Field getField(int target) {
+
+        synchronized (this) {
+
+            Field field = fields.get(target);
+
+            if (field != null) {
+                return field;
+            }
+        }
+
+        if (Arrays.binarySearch(targets, target) < 0) {
+            throw new IllegalArgumentException("Route table has no routes into the given tile");
+        }
+
+        Field field = buildField(target);
+
+        synchronized (this) {
+
+            Field stored = fields.get(target);
+
+            if (stored != null) {
+                return stored;
+            }
+
+            fields.put(target, field);
+            return field;
+        }
+    }
+
+    private Field buildField(int target) {
+
+        int nodeCount = graph.getNodeCount();
+
+        Field field = new Field();
+        field.nextHops = new byte[(nodeCount + 3) >> 2];
+        field.isReached = new long[(nodeCount + 63) >> 6];
+
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+
+        queue[tail++] = target;
+        field.isReached[target >> 6] |= 1L << target;
+
+        while (head != tail) {
+
+            int current = queue[head++];
+
+            for (int e = graph.getNeighborStart(current); e < graph.getNeighborEnd(current); e++) {
+
+                int neighbor = graph.getNeighbor(e);
+
+                if (isReached(field, neighbor)) {
+                    continue;
+                }
+
+                field.isReached[neighbor >> 6] |= 1L << neighbor;
+                queue[tail++] = neighbor;
+
+                // the neighbor steps back to current on its way to the target
+                int start = graph.getNeighborStart(neighbor);
+                int hop = 0;
+
+                while (graph.getNeighbor(start + hop) != current) {
+                    hop++;
+                }
+
+                setHop(field.nextHops, neighbor, hop);
+            }
+        }
+
+        expandedCount.addAndGet(tail);
+        return field;
+    }
+
+    private static boolean isReached(Field field, int node) {
+        return (field.isReached[node >> 6] & (1L << node)) != 0;
+    }
+
+    private int getNextHop(Field field, int node) {
+        return graph.getNeighbor(graph.getNeighborStart(node) + getHop(field.nextHops, node));
+    }
+
+    // walks the hops, so it costs as many steps as the distance
+    private int getDistance(Field field, int from, int to) {
+
+        if (!isReached(field, from)) {
+            return -1;
+        }
+
+        int distance = 0;
+
+        for (int node = from; node != to; node = getNextHop(field, node)) {
+            distance++;
+        }
+
+        return distance;
+    }
+
+    // -1 when the target cannot be reached
+    public int getDistance(int from, int to) {
+        return getDistance(getField(to), from, to);
+    }
+
+    @Override
+    public int[] findPath(int from, int to) {
+
+        Field field = getField(to);
+        int distance = getDistance(field, from, to);
+
+        if (distance < 0) {
+            throw new RuntimeException("No path exists between the given tiles");
+        }
+
+        int[] path = new int[distance + 1];
+        int node = from;
+
+        path[0] = from;
+
+        for (int i = 1; i < path.length; i++) {
+            node = getNextHop(field, node);
+            path[i] = node;
+        }
+
+        return path;
+    }
+}
@@ -1,58 +1,95 @@
 import java.util.List;
-import java.util.Set;
 import java.util.Map;
 
-import java.util.LinkedList;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.AbstractList;
 
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
 
-import java.util.Queue;
-import java.util.ArrayDeque;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class ScheduleGenerator {
 
     private Map<String, List<Tile>> tileMap;
     private List<String> roomTypes;
     private Grid grid;
+    private long seed;
 
+    // ROOM_TABLE shares one BFS field per destination room; the others search
+    // every leg from scratch, and HIERARCHICAL gives up exact shortest paths
+    // for speed on very large grids
+    //
+    // NEAREST_ROOM also changes the schedules themselves: after a random first
+    // room, actors head for the nearest tile of each room type and follow one
+    // shared flow field per type instead of searching
+    public enum Routing { ROOM_TABLE, BFS, A_STAR, JUMP_POINT, HIERARCHICAL, NEAREST_ROOM }
+
+    // actors whose schedules are read at a time when grouping them
+    public static final int SCHEDULE_BATCH_SIZE = 1 << 16;
+
+    private Routing routing = Routing.ROOM_TABLE;
+    private boolean isGrouping = true;
+    private Pathfinder pathfinder;
+    private NeighborGraph graph;
+
+    // a read-only view that formats each schedule only when it is read, so
+    // a list display only pays for the rows on screen
     public static List<String> getStringList(List<List<Tile>> schedules) {
         
-        List<String> list = new ArrayList<String>();
+        return new AbstractList<String>() {
+
+            @Override
+            public int size() { return schedules.size(); }
+
+            @Override
+            public String get(int index) { return getString(schedules.get(index)); }
+        };
+    }
+
+    public static String getString(List<Tile> schedule) {
+            
+        StringBuilder ss = new StringBuilder();
+        ss.append("[ ");
         
-        for (List<Tile> schedule : schedules) {
+        for (int i = 0; i < schedule.size(); i++) {
             
-            StringBuilder ss = new StringBuilder();
-            ss.append("[ ");
+            Tile current = schedule.get(i);
+            ss.append("(" + current.getRow() + ", " + current.getCol() + ") ");
             
-            for (int i = 0; i < schedule.size(); i++) {
-                
-                Tile current = schedule.get(i);
-                ss.append("(" + current.getRow() + ", " + current.getCol() + ") ");
-                
-                if (i != schedule.size() - 1) {
-                    ss.append(" - ");
-                }
+            if (i != schedule.size() - 1) {
+                ss.append(" - ");
             }
-
-            ss.append("]");
-            list.add(ss.toString());
         }
 
-        return list;
+        ss.append("]");
+        return ss.toString();
     }
 
     public ScheduleGenerator(Grid grid) {
+        this(grid, new SplittableRandom().nextLong());
+    }
+
+    // the same grid and seed always give the same schedules, however many
+    // threads generate them
+    public ScheduleGenerator(Grid grid, long seed) {
         
         this.grid = grid;
+        this.seed = seed;
 
-        Set<Tile> totalValidTiles = grid.getValidTiles();
         tileMap = new HashMap<String, List<Tile>>();
+
+        byte floorType = grid.getTypeOf("floor");
         
-        for (Tile tile : totalValidTiles) {
+        for (int i = grid.nextValidIndex(0); i >= 0; i = grid.nextValidIndex(i + 1)) {
+
+            Tile tile = grid.getTileAt(grid.getRowOf(i), grid.getColOf(i));
             
-            if ("floor".equals(tile.getAttribute())) {
+            if (tile.getType() == floorType) {
                 continue;
             }
 
@@ -66,88 +103,413 @@ public class ScheduleGenerator {
         roomTypes = new ArrayList<String>(tileMap.keySet());
     }
 
+    public long getSeed() { return seed; }
+
+    // every tile a schedule can visit, as the grid was when this was made
+    public List<Tile> getRoomTiles() {
+        return tileMap.values().stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    // every schedule at once; see getSchedules for large numbers of actors
     public List<List<Tile>> generateSchedules(int numberOfSchedules) {
-        
-        List<List<Tile>> schedules = new ArrayList<List<Tile>>();
-        
-        for (int i = 0; i < numberOfSchedules; i++) {
-            
-            List<Tile> randomSchedule = new ArrayList<Tile>();
-            Collections.shuffle(roomTypes);
-            
-            for (String roomType : roomTypes) {
 
-                List<Tile> choices = tileMap.get(roomType);
-                int targetIdx = (int)(Math.random() * choices.size());
-                
-                randomSchedule.add(choices.get(targetIdx));
+        // built up front rather than raced for by the threads below
+        grid.getNeighborGraph();
+
+        return IntStream.range(0, numberOfSchedules).parallel()
+            .mapToObj(this::generateSchedule)
+            .collect(Collectors.toList());
+    }
+
+    // the same schedules as generateSchedules, made only when they are read
+    public ScheduleSource getSchedules(int numberOfSchedules) {
+
+        grid.getNeighborGraph();
+        return new ScheduleSource(this, numberOfSchedules);
+    }
+
+    // every actor draws from its own generator seeded by (seed, actorIndex),
+    // so one schedule never depends on another or on the order they are made
+    public List<Tile> generateSchedule(int actorIndex) {
+
+        SplittableRandom random = new SplittableRandom(getActorSeed(seed, actorIndex));
+
+        String[] order = roomTypes.toArray(new String[roomTypes.size()]);
+
+        for (int i = order.length - 1; i > 0; i--) {
+
+            int j = random.nextInt(i + 1);
+            String swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        List<Tile> randomSchedule = new ArrayList<Tile>();
+
+        for (String roomType : order) {
+
+            List<Tile> choices = tileMap.get(roomType);
+            int targetIdx = random.nextInt(choices.size());
+            Tile target = choices.get(targetIdx);
+
+            if (routing == Routing.NEAREST_ROOM && !randomSchedule.isEmpty()) {
+                target = getNearestTile(randomSchedule.get(randomSchedule.size() - 1), roomType);
             }
+            
+            randomSchedule.add(target);
+        }
+
+        return randomSchedule;
+    }
+
+    // the murmur3 finalizer over seed and index, so neighbouring actors get
+    // unrelated streams rather than shifted copies of one another
+    private static long getActorSeed(long seed, int actorIndex) {
+
+        long z = seed + (actorIndex + 1) * 0x9E3779B97F4A7C15L;
+
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
 
-            schedules.add(randomSchedule);
+    // the closest tile of the room type, by walking distance
+    private Tile getNearestTile(Tile from, String roomType) {
+
+        NeighborGraph current = grid.getNeighborGraph();
+        FlowField field = grid.getFlowField(grid.getTypeOf(roomType));
+
+        int node = current.getNode(from.getRow(), from.getCol());
+
+        if (field.getDistance(node) < 0) {
+            throw new RuntimeException("No " + roomType + " tile can be reached");
         }
 
-        return schedules;
+        int nearest = field.getNearest(node);
+        return grid.getTileAt(current.getRow(nearest), current.getCol(nearest));
+    }
+
+    public void setRouting(Routing routing) {
+        this.routing = routing;
+        this.pathfinder = null;
     }
 
-    // for ONE ACTOR's schedule
-    // get paths for all periods
-    public List<List<Tile>> getPathsForSchedule(List<Tile> schedule) {
+    public Routing getRouting() { return routing; }
 
-        if (schedule.size() <= 1) {
-            throw new RuntimeException("Cannot pathfind for a schedule of only one target");
+    // with grouping off every actor is routed and simulated on its own, for
+    // checking that groups change nothing but the cost
+    public void setGrouping(boolean isGrouping) { this.isGrouping = isGrouping; }
+    public boolean isGrouping()                 { return isGrouping;            }
+
+    public long getExpandedCount() {
+        return pathfinder == null ? 0 : pathfinder.getExpandedCount();
+    }
+
+    // for EVERY ACTOR's schedule, in the order given
+    //
+    // actors with identical schedules are routed and counted once, as one
+    // group weighted by the number of actors in it; groups are numbered in
+    // the order their first actor appears
+    //
+    // many groups leave the same room tiles, so the distinct legs are grouped
+    // by origin and each origin is searched once for all of its destinations;
+    // origins are independent and run in parallel
+    //
+    // each distinct leg is stored once and shared by every group walking it
+    public TrajectoryStore getPathsForSchedules(List<List<Tile>> schedules) {
+
+        Pathfinder finder = getPathfinder();
+
+        int periodCount = schedules.get(0).size() - 1;
+
+        List<TileSequence> distinctSchedules;
+        int[] weights;
+
+        if (isGrouping) {
+            Map<TileSequence, int[]> groups = getScheduleGroups(schedules, periodCount);
+            distinctSchedules = new ArrayList<TileSequence>(groups.keySet());
+            weights = groups.values().stream().mapToInt(count -> count[0]).toArray();
         }
-        
-        List<List<Tile>> paths = new ArrayList<List<Tile>>();
-        
-        for (int i = 0; i < schedule.size() - 1; i++) {
-            paths.add(getBFSPath(schedule.get(i), schedule.get(i + 1)));
+        else {
+            distinctSchedules = Arrays.asList(readSchedules(schedules, 0, schedules.size(), periodCount));
+            weights = new int[distinctSchedules.size()];
+            Arrays.fill(weights, 1);
         }
-        
-        return paths;
+
+        long[] legs = getDistinctLegs(distinctSchedules, periodCount);
+        int[][] legPaths = findLegPaths(finder, legs);
+
+        TrajectoryStore store = new TrajectoryStore(weights, periodCount);
+
+        for (int[] path : legPaths) {
+            store.addTrajectory(toTileIndices(path));
+        }
+
+        IntStream.range(0, distinctSchedules.size()).parallel().forEach(g -> {
+
+            int[] tiles = distinctSchedules.get(g).tiles;
+
+            for (int p = 0; p < periodCount; p++) {
+                store.setTrajectory(g, p, Arrays.binarySearch(legs, getLeg(tiles[p], tiles[p + 1])));
+            }
+        });
+
+        return store;
     }
 
-    private List<Tile> getBFSPath(Tile from, Tile to) {
-        
-        Tile[][] parents = new Tile[grid.getHeight()][grid.getWidth()];
-        Queue<Tile> bfs = new ArrayDeque<Tile>();
-        
-        bfs.add(from);
-        parents[from.getRow()][from.getCol()] = from;
+    // a schedule as tile indices, compared by content
+    private static final class TileSequence {
 
-        while (bfs.size() != 0) {
-            
-            Tile current = bfs.poll();
-            
-            if (current.equals(to)) {
-                break;
+        private final int[] tiles;
+        private final int hash;
+
+        private TileSequence(int[] tiles) {
+            this.tiles = tiles;
+            this.hash = Arrays.hashCode(tiles);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TileSequence && Arrays.equals(tiles, ((TileSequence) o).tiles);
+        }
+    }
+
+    // every distinct schedule with the number of actors following it
+    //
+    // schedules are read a batch at a time, so a lazy ScheduleSource never has
+    // more than one batch in memory besides the distinct ones
+    private Map<TileSequence, int[]> getScheduleGroups(List<List<Tile>> schedules, int periodCount) {
+
+        Map<TileSequence, int[]> groups = new LinkedHashMap<TileSequence, int[]>();
+
+        for (int start = 0; start < schedules.size(); start += SCHEDULE_BATCH_SIZE) {
+
+            int end = Math.min(start + SCHEDULE_BATCH_SIZE, schedules.size());
+
+            TileSequence[] batch = readSchedules(schedules, start, end, periodCount);
+
+            for (TileSequence schedule : batch) {
+                groups.computeIfAbsent(schedule, key -> new int[1])[0]++;
             }
+        }
+
+        return groups;
+    }
+
+    // the schedules of actors [start, end) as tile indices
+    private TileSequence[] readSchedules(List<List<Tile>> schedules, int start, int end, int periodCount) {
 
-            for (Tile neighbor : current.getNeighbors()) {
-                
-                if (parents[neighbor.getRow()][neighbor.getCol()] == null) {
-                    parents[neighbor.getRow()][neighbor.getCol()] = current;
-                    bfs.add(neighbor);
+        return IntStream.range(start, end).parallel()
+            .mapToObj(a -> {
+
+                List<Tile> schedule = schedules.get(a);
+
+                if (schedule.size() <= 1) {
+                    throw new RuntimeException("Cannot pathfind for a schedule of only one target");
                 }
+
+                if (schedule.size() != periodCount + 1) {
+                    throw new RuntimeException("Every schedule must visit the same number of targets");
+                }
+
+                return new TileSequence(schedule.stream().mapToInt(Tile::getIndex).toArray());
+            })
+            .toArray(TileSequence[]::new);
+    }
+
+    // tile index paths between pairs of tile indices, searched the same way
+    public int[][] getTilePaths(int[] fromTiles, int[] toTiles) {
+
+        Pathfinder finder = getPathfinder();
+        long[] pairs = new long[fromTiles.length];
+
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = getLeg(fromTiles[i], toTiles[i]);
+        }
+
+        long[] legs = Arrays.stream(pairs).sorted().distinct().toArray();
+        int[][] legPaths = findLegPaths(finder, legs);
+
+        return Arrays.stream(pairs)
+            .mapToObj(pair -> toTileIndices(legPaths[Arrays.binarySearch(legs, pair)]))
+            .toArray(int[][]::new);
+    }
+
+    // one path per leg of a sorted, distinct list of legs
+    private int[][] findLegPaths(Pathfinder finder, long[] legs) {
+
+        int[][] legPaths = new int[legs.length][];
+
+        int[] groupStarts = IntStream.rangeClosed(0, legs.length)
+            .filter(i -> i == 0 || i == legs.length || getSource(legs[i]) != getSource(legs[i - 1]))
+            .toArray();
+
+        IntStream.range(0, groupStarts.length - 1).parallel().forEach(g -> {
+
+            int start = groupStarts[g];
+            int end = groupStarts[g + 1];
+            int source = getSource(legs[start]);
+
+            // a path always holds both endpoints, even when they are the same tile
+            int[] targets = IntStream.range(start, end)
+                .map(i -> getTarget(legs[i]))
+                .filter(target -> target != source)
+                .toArray();
+
+            int[][] found = finder.findPaths(source, targets);
+            int next = 0;
+
+            for (int i = start; i < end; i++) {
+                legPaths[i] = getTarget(legs[i]) == source
+                    ? new int[] { source, source }
+                    : found[next++];
+            }
+        });
+
+        return legPaths;
+    }
+
+    // sorted, so legs with the same origin are next to each other
+    private long[] getDistinctLegs(List<TileSequence> schedules, int periodCount) {
+
+        long[] legs = schedules.parallelStream()
+            .flatMapToLong(schedule -> IntStream.range(0, periodCount)
+                .mapToLong(i -> getLeg(schedule.tiles[i], schedule.tiles[i + 1])))
+            .toArray();
+
+        Arrays.parallelSort(legs);
+
+        int count = 0;
+
+        for (int i = 0; i < legs.length; i++) {
+            if (count == 0 || legs[i] != legs[count - 1]) {
+                legs[count++] = legs[i];
             }
         }
 
-        LinkedList<Tile> path = new LinkedList<Tile>();
-        Tile current = to;
-        
-        do {
-            path.addFirst(current);
-            current = parents[current.getRow()][current.getCol()];
+        return Arrays.copyOf(legs, count);
+    }
+
+    // compares the current routing against exact BFS paths on a sample of
+    // the schedules' legs
+    public String describePathQuality(List<List<Tile>> schedules, int sampleCount) {
+
+        Pathfinder finder = getPathfinder();
+        BfsPathfinder exact = new BfsPathfinder(graph);
+        Random sampler = new Random(0);
+
+        int legCount = 0;
+        int exactCount = 0;
+        double totalStretch = 0;
+        double worstStretch = 1;
+
+        for (int i = 0; i < sampleCount; i++) {
+
+            List<Tile> schedule = schedules.get(sampler.nextInt(schedules.size()));
+            int p = sampler.nextInt(schedule.size() - 1);
+            long leg = getLeg(schedule.get(p), schedule.get(p + 1));
+
+            if (getSource(leg) == getTarget(leg)) {
+                continue;
+            }
+
+            int length = finder.findPath(getSource(leg), getTarget(leg)).length - 1;
+            int shortest = exact.findPath(getSource(leg), getTarget(leg)).length - 1;
+            double stretch = (double) length / shortest;
+
+            legCount++;
+            exactCount += length == shortest ? 1 : 0;
+            totalStretch += stretch;
+            worstStretch = Math.max(worstStretch, stretch);
         }
-        while (!parents[current.getRow()][current.getCol()].equals(current));
 
-        path.addFirst(from);
+        return String.format(
+            "%d of %d sampled legs shortest, mean length %.3fx shortest, worst %.3fx",
+            exactCount, legCount, legCount == 0 ? 1.0 : totalStretch / legCount, worstStretch
+        );
+    }
 
-        ArrayList<Tile> convertedPath = new ArrayList<Tile>();
-        
-        for (Tile copy : path) {
-            convertedPath.add(copy);
+    // anything derived from an older graph is dropped once the grid changes;
+    // the searches keep per-search scratch, so each thread gets its own while
+    // the route table is shared
+    private Pathfinder getPathfinder() {
+
+        NeighborGraph current = grid.getNeighborGraph();
+
+        if (graph != current || pathfinder == null) {
+
+            graph = current;
+            Pathfinder search;
+
+            switch (routing) {
+                case BFS:
+                    search = new PerThreadPathfinder(() -> new BfsPathfinder(current));
+                    break;
+                case A_STAR:
+                    search = new PerThreadPathfinder(() -> new AStarPathfinder(current));
+                    break;
+                case JUMP_POINT:
+                    search = new PerThreadPathfinder(() -> new JumpPointPathfinder(grid, current));
+                    break;
+                case HIERARCHICAL:
+                    ClusterGraph clusters = grid.getClusterGraph();
+                    search = new PerThreadPathfinder(() -> new HierarchicalPathfinder(grid, current, clusters));
+                    break;
+                case NEAREST_ROOM:
+                    search = new NearestRoomPathfinder(grid, current, getRoomNodes());
+                    break;
+                default:
+                    search = new RoomRouteTable(graph, getRoomNodes());
+                    break;
+            }
+
+            pathfinder = search;
+        }
+
+        return pathfinder;
+    }
+
+    // every room tile a schedule can visit, as nodes of the current graph
+    private int[] getRoomNodes() {
+
+        return getRoomTiles().stream()
+            .mapToInt(tile -> graph.getNode(tile.getIndex()))
+            .filter(node -> node >= 0)
+            .toArray();
+    }
+
+    // a leg packs its start node into the high half and its end node into
+    // the low half, so legs sort by origin first
+    private long getLeg(Tile from, Tile to) {
+        return getLeg(grid.getIndexOf(from.getRow(), from.getCol()), grid.getIndexOf(to.getRow(), to.getCol()));
+    }
+
+    private long getLeg(int fromTile, int toTile) {
+
+        int source = graph.getNode(fromTile);
+        int target = graph.getNode(toTile);
+
+        if (source < 0 || target < 0) {
+            throw new RuntimeException("Cannot pathfind to or from a wall");
+        }
+
+        return ((long)source << 32) | target;
+    }
+
+    private static int getSource(long leg) { return (int)(leg >>> 32); }
+    private static int getTarget(long leg) { return (int)leg;          }
+
+    private int[] toTileIndices(int[] nodes) {
+
+        int[] tileIndices = new int[nodes.length];
+
+        for (int i = 0; i < nodes.length; i++) {
+            tileIndices[i] = graph.getTileIndex(nodes[i]);
         }
 
-        return convertedPath;
+        return tileIndices;
     }
 }
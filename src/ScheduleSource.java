@@ -0,0 +1,49 @@
+import java.util.List;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+
+import java.util.stream.IntStream;
+
+// Every actor's schedule, made on demand instead of held in memory.
+//
+// A schedule depends only on the generator's seed and the actor's index, so
+// asking for the same actor twice gives equal schedules and the list costs
+// nothing until it is read. Streams over it split by index range, so
+// parallel consumers each generate their own share of the actors.
+//
+// With NEAREST_ROOM routing a schedule is resolved against the grid as it is
+// when the schedule is read.
+public class ScheduleSource extends AbstractList<List<Tile>> implements RandomAccess {
+
+    private final ScheduleGenerator generator;
+    private final int actorCount;
+
+    public ScheduleSource(ScheduleGenerator generator, int actorCount) {
+
+        if (actorCount < 0) {
+            throw new IllegalArgumentException("Number of actors cannot be negative");
+        }
+
+        this.generator = generator;
+        this.actorCount = actorCount;
+    }
+
+    @Override
+    public int size() { return actorCount; }
+
+    @Override
+    public List<Tile> get(int actorIndex) {
+
+        if (actorIndex < 0 || actorIndex >= actorCount) {
+            throw new IndexOutOfBoundsException("No actor " + actorIndex + " of " + actorCount);
+        }
+
+        return generator.generateSchedule(actorIndex);
+    }
+
+    @Override
+    public Spliterator<List<Tile>> spliterator() {
+        return IntStream.range(0, actorCount).mapToObj(this::get).spliterator();
+    }
+}
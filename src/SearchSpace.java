@@ -0,0 +1,56 @@
+import java.util.Arrays;
+
+// Per-node bookkeeping shared by the graph searches. A node counts as
+// visited when its stamp matches the current search's, so starting a new
+// search is O(1) rather than a fill over every node.
+public class SearchSpace {
+
+    private final int[] parents;
+    private final int[] stamps;
+    private int stamp;
+
+    public SearchSpace(int nodeCount) {
+        this.parents = new int[nodeCount];
+        this.stamps = new int[nodeCount];
+    }
+
+    public void reset() {
+
+        if (++stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    public boolean isVisited(int node) { return stamps[node] == stamp; }
+    public int getParent(int node)     { return parents[node];         }
+
+    public void visit(int node, int parent) {
+        stamps[node] = stamp;
+        parents[node] = parent;
+    }
+
+    // follows parents back from the target; the start is its own parent
+    public int[] tracePath(int from, int to) {
+
+        if (!isVisited(to)) {
+            throw new RuntimeException("No path exists between the given tiles");
+        }
+
+        int length = 1;
+
+        for (int node = to; node != from; node = parents[node]) {
+            length++;
+        }
+
+        int[] path = new int[length];
+        int node = to;
+
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = node;
+            node = parents[node];
+        }
+
+        return path;
+    }
+}
@@ -18,7 +18,7 @@ import javafx.geometry.Insets;
 import java.lang.Thread;
 import javafx.concurrent.Task;
 
-import javafx.collections.ObservableList;
+import javafx.collections.FXCollections;
 
 import java.util.*;
 import java.io.*;
@@ -40,6 +40,9 @@ public class Simulator {
 
             Pane canvasOverlay = new Pane();
 
+            rectangles = new Rectangle[grid.getHeight()][grid.getWidth()];
+            tooltips = new Tooltip[grid.getHeight()][grid.getWidth()];
+
             for (int r = 0; r < grid.getHeight(); r++) {
                 
                 for (int c = 0; c < grid.getWidth(); c++) {
@@ -58,7 +61,7 @@ public class Simulator {
                     initTileEventHandler(row, col, current);
 
                     canvasOverlay.getChildren().addAll(current);
-                    grid.setRectangleAt(r, c, current);
+                    rectangles[r][c] = current;
                 }
             }
 
@@ -144,18 +147,29 @@ public class Simulator {
                 public void handle(MouseEvent event) {
 
                     if (event.isPrimaryButtonDown()) {
-                    
-                        recentlyVerified = false;
-                        recentlyGeneratedSchedules = false;
-                        
-                        rightBase.simulateButton.setDisable(true);
 
                         String oldAttribute = grid.getAttributeAt(row, col);
                         String newAttribute = tilePaintbrush;
                         
                         boolean oldIsNew = oldAttribute.equals(newAttribute);
+                        boolean wasTraversable = grid.isTraversableAt(row, col);
 
                         this.setTile(oldIsNew ? "wall" : tilePaintbrush);
+
+                        // schedules survive any edit that leaves the room tiles alone,
+                        // and the last simulation's paths are repaired around it
+                        int index = grid.getIndexOf(row, col);
+
+                        if (scheduledTiles.contains(index)) {
+                            recentlyGeneratedSchedules = false;
+                            canRepairSimulation = false;
+                        }
+                        else if (wasTraversable != grid.isTraversableAt(row, col)) {
+                            editedTiles.add(index);
+                        }
+
+                        // contiguity is checked once when the simulation runs
+                        rightBase.simulateButton.setDisable(!canSimulate());
                     }
                 }
 
@@ -171,17 +185,35 @@ public class Simulator {
             Tooltip coordinateTooltip = new Tooltip();
             coordinateTooltip.setText("(" + row + ", " + col + ")");
             
-            grid.setTooltipAt(row, col, coordinateTooltip);
+            tooltips[row][col] = coordinateTooltip;
             Tooltip.install(current, coordinateTooltip);
         }
 
+        // outlines every tile outside the largest region so islands stand out
+        public void highlightIslands(ComponentReport report) {
+
+            int largest = report.getLargestComponent();
+
+            for (int r = 0; r < grid.getHeight(); r++) {
+                for (int c = 0; c < grid.getWidth(); c++) {
+
+                    int label = report.getLabelAt(r, c);
+                    Color stroke = label >= 0 && label != largest
+                        ? ISLAND_COLOR
+                        : colors.get(grid.getAttributeAt(r, c));
+
+                    rectangles[r][c].setStroke(stroke);
+                }
+            }
+        }
+
         public void enableAndRedrawTiles() {
             
             for (int r = 0; r < grid.getHeight(); r++) {
                 for (int c = 0; c < grid.getWidth(); c++) {
 
-                    Rectangle rectangle = grid.getRectangleAt(r, c);
-                    initTileEventHandler(r, c, grid.getRectangleAt(r, c));
+                    Rectangle rectangle = rectangles[r][c];
+                    initTileEventHandler(r, c, rectangles[r][c]);
 
                     String attribute = grid.getAttributeAt(r, c);
                     Color refill = colors.get(attribute);
@@ -259,21 +291,7 @@ public class Simulator {
 
                 public void printToFile(File file) throws FileNotFoundException {
                     
-                    PrintWriter writer = new PrintWriter(file);
-                    
-                    writer.println("ntwk_file");
-                    writer.println(simulationName);
-                    writer.println(grid.getWidth() + " " + grid.getHeight());
-                    
-                    for (int r = 0; r < grid.getHeight(); r++) {
-                        for (int c = 0; c < grid.getWidth(); c++) {
-                            writer.printf(grid.getAttributeAt(r, c) + " ");
-                        }
-                        writer.println();
-                    }
-
-                    writer.flush();
-                    writer.close();
+                    new NetworkFile(simulationName, grid).write(file);
 
                     messageLog.println(
                         "[Info] File " + file.getName() + " saved. " + (new Date()).toString()
@@ -295,11 +313,23 @@ public class Simulator {
                     
                     messageLog.println(grid.isContiguous() 
                         ? "[Verified] Grid is one contiguous body."
-                        : "[Warning] Grid is not contiguous. Unreachable tiles exist."
+                        : "[Warning] Grid is not contiguous. Unreachable tiles exist. "
+                        + "Regions found: " + grid.getComponentCount()
                     );
 
-                    recentlyVerified = grid.isContiguous();
-                    rightBase.simulateButton.setDisable(!canSimulate());
+                    ComponentReport report = ComponentLabeler.label(grid);
+                    centerBase.highlightIslands(report);
+
+                    if (!grid.isContiguous()) {
+
+                        int largest = report.getLargestComponent();
+
+                        for (int i = 0; i < report.getComponentCount(); i++) {
+                            if (i != largest) {
+                                messageLog.println("[Warning] Island " + report.describe(i));
+                            }
+                        }
+                    }
                 }
             });
 
@@ -340,10 +370,21 @@ public class Simulator {
                             }
                             
                             scheduleGenerator = new ScheduleGenerator(grid);
-                            actorSchedules = scheduleGenerator.generateSchedules(N);
+                            actorSchedules = scheduleGenerator.getSchedules(N);
+
+                            scheduledTiles.clear();
+                            canRepairSimulation = false;
 
-                            ObservableList<String> list = scheduleBaseOutput.getItems();
-                            list.setAll(ScheduleGenerator.getStringList(actorSchedules));
+                            // schedules are only made as they are read, so every
+                            // room tile counts rather than walking them all here
+                            for (Tile tile : scheduleGenerator.getRoomTiles()) {
+                                scheduledTiles.add(tile.getIndex());
+                            }
+
+                            // rows are formatted as they scroll into view
+                            scheduleBaseOutput.setItems(
+                                FXCollections.observableList(ScheduleGenerator.getStringList(actorSchedules))
+                            );
 
                             recentlyGeneratedSchedules = true;
                             rightBase.simulateButton.setDisable(!canSimulate());
@@ -424,6 +465,21 @@ public class Simulator {
                         )
                     );
 
+                    TextField tileCapacityField = new TextField();
+                    tileCapacityField.setText(
+                        TILE_CAPACITY > 0
+                            ? String.valueOf(TILE_CAPACITY)
+                            : ""
+                    );
+                    tileCapacityField.setPromptText("Enter tile capacity");
+                    tileCapacityField.setMaxWidth(Double.MAX_VALUE);
+                    tileCapacityField.setTooltip(
+                        new Tooltip(
+                            "The most actors one floor tile holds in one step. Others wait until there is room."
+                          + "\nLeave empty to spread every actor evenly over the floor."
+                        )
+                    );
+
 
                     Button updateButton = new Button("Update all parementers and return");
                     updateButton.setOnAction(new EventHandler<ActionEvent>() {
@@ -438,6 +494,7 @@ public class Simulator {
                                 
                                 String actorFrequencyText = actorFrequencyField.getText();
                                 String tileScaleText = tileScaleField.getText();
+                                String tileCapacityText = tileCapacityField.getText();
 
                                 if ("".equals(tempDistanceText) || "".equals(tempTimeUnitText)) {
                                     throw new Exception("Distance and time units cannot be empty.");
@@ -445,13 +502,27 @@ public class Simulator {
 
                                 int tempActorFrequency = Integer.parseInt(actorFrequencyText);
                                 int tempTileScale = Integer.parseInt(tileScaleText);
+                                int tempTileCapacity = "".equals(tileCapacityText)
+                                    ? LocationData.AUTO_CAPACITY
+                                    : Integer.parseInt(tileCapacityText);
 
                                 if (tempActorFrequency <= 0 || tempTileScale <= 0) {
                                     throw new Exception("Speed and Tile Scale must be positive integers.");
                                 }
 
+                                if (tempTileCapacity <= 0 && tempTileCapacity != LocationData.AUTO_CAPACITY) {
+                                    throw new Exception("Tile Capacity must be a positive integer.");
+                                }
+
+                                // waits depend on the capacity, so the next
+                                // simulation starts over rather than repairing
+                                if (tempTileCapacity != TILE_CAPACITY) {
+                                    canRepairSimulation = false;
+                                }
+
                                 ACTOR_TRAVERSAL_FREQUENCY = tempActorFrequency;
                                 TILE_SCALE = tempTileScale;
+                                TILE_CAPACITY = tempTileCapacity;
                                 
                                 DISTANCE_UNIT = tempDistanceText;
                                 TIME_UNIT = tempTimeUnitText;
@@ -469,6 +540,10 @@ public class Simulator {
                                 );
                                 
                                 messageLog.println("[Info] Tile Scale: " + TILE_SCALE + " " + DISTANCE_UNIT);
+                                messageLog.println(
+                                    "[Info] Tile Capacity: "
+                                  + (TILE_CAPACITY > 0 ? TILE_CAPACITY + " actors" : "actors spread over the floor")
+                                );
                             }
                             catch (Exception ex) {
                                 messageLog.println(
@@ -491,6 +566,7 @@ public class Simulator {
                     tempGridPane.add(timeUnitField, 0, 1);
                     tempGridPane.add(tileScaleField, 1, 0);
                     tempGridPane.add(actorFrequencyField, 1, 1);
+                    tempGridPane.add(tileCapacityField, 0, 2);
 
                     rootPane.getChildren().addAll(
                         new Text("Enter parameters for actor movement scaling:"),
@@ -587,6 +663,7 @@ public class Simulator {
                                 }
 
                                 grid = updatedGrid;
+                                canRepairSimulation = false;
                                 centerBase = new CenterBase();
                                 mainPane.setCenter(centerBase.centerRoot);
 
@@ -738,7 +815,6 @@ public class Simulator {
                     updateStepSliderBounds();
 
                     drawSimulation();
-                    showUsageTooltips();
                 }
             });
         }
@@ -758,7 +834,6 @@ public class Simulator {
                     updateStepSliderBounds();
 
                     drawSimulation();
-                    showUsageTooltips();
                 }
             });
         }
@@ -778,7 +853,6 @@ public class Simulator {
                     updateStepSliderBounds();
 
                     drawSimulation();
-                    showUsageTooltips();
                 }
             });
         }
@@ -798,7 +872,6 @@ public class Simulator {
                     updateStepSliderBounds();
 
                     drawSimulation();
-                    showUsageTooltips();
                 }
             });
         }
@@ -867,6 +940,16 @@ public class Simulator {
 
                 public void runSimulation() {
 
+                    // a split grid can still be repaired as long as every path
+                    // that has to move stays within one region
+                    if (!canRepairSimulation && !grid.isContiguous()) {
+
+                        messageLog.println(
+                            "[Error] Grid is not contiguous. Verify the grid and reconnect its regions."
+                        );
+                        return;
+                    }
+
                     simulateButton.setDisable(true);
 
                     leftBase.saveAsButton.setDisable(true);
@@ -875,18 +958,54 @@ public class Simulator {
                     leftBase.setTimeParametersButton.setDisable(true);
                     leftBase.reshapeButton.setDisable(true);
 
-                    locationData = new LocationData(scheduleGenerator, actorSchedules, grid);
+                    if (canRepairSimulation) {
+
+                        int editCount = editedTiles.size();
+
+                        try {
+
+                            int repairedCount = locationData.repairPaths(editedTiles);
+
+                            messageLog.println(
+                                "[Info] " + editCount + " edited tiles re-routed " + repairedCount + " paths."
+                            );
+                        }
+                        catch (RuntimeException ex) {
+
+                            messageLog.println("[Error] " + ex.getMessage() + " No simulation was generated.");
+
+                            leftBase.saveAsButton.setDisable(false);
+                            leftBase.checkContiguousButton.setDisable(false);
+                            leftBase.generateSchedulesButton.setDisable(false);
+                            leftBase.setTimeParametersButton.setDisable(false);
+                            leftBase.reshapeButton.setDisable(false);
+
+                            simulateButton.setDisable(false);
+                            return;
+                        }
+                    }
+                    else {
+                        locationData = new LocationData(scheduleGenerator, actorSchedules, grid, TILE_CAPACITY);
+                    }
+
+                    editedTiles.clear();
+                    canRepairSimulation = true;
 
                     updateCanUseRightButtons();
                     updateStepSliderBounds();
 
                     stepSlider.setDisable(false);
 
+                    drawnPeriod = -1;
+
                     drawSimulation();
                     disableTiles();
-                    showUsageTooltips();                
 
                     messageLog.println("[Info] Simulation generated!");
+                    messageLog.println(
+                        "[Info] Floor tiles hold " + locationData.getTileCapacity() + " actors; "
+                      + locationData.getOverCapacityCount() + " moves went over."
+                    );
 
                     resetButton.setDisable(false);
                 }
@@ -969,7 +1088,6 @@ public class Simulator {
                         timeLabel.setText("Time: " + newStepDiv + " " + TIME_UNIT);
                         updateCanUseRightButtons();
                         drawSimulation();
-                        showUsageTooltips();
                     }
                 }
             });
@@ -999,6 +1117,7 @@ public class Simulator {
     private RightBase  rightBase;
 
     private HashMap<String, Color> colors;
+    private static final Color ISLAND_COLOR = Color.CRIMSON;
 
     private String simulationName, tilePaintbrush;
 
@@ -1007,6 +1126,10 @@ public class Simulator {
     
     private Grid grid;
 
+    // the grid holds no UI state, so each tile's node is kept here
+    private Rectangle[][] rectangles;
+    private Tooltip[][] tooltips;
+
     private Stage actorStage;
     private BorderPane mainPane;
 
@@ -1016,9 +1139,18 @@ public class Simulator {
     private List<List<Tile>> actorSchedules;
     private List<List<List<Tile>>> actorPaths;
 
-    private boolean recentlyVerified = false;
     private boolean recentlyGeneratedSchedules = false;
 
+    // tiles painted since the last simulation that opened or closed a tile
+    // no schedule can visit; the next simulation only repairs paths near them
+    private Set<Integer> scheduledTiles = new HashSet<Integer>();
+    private Set<Integer> editedTiles = new HashSet<Integer>();
+    private boolean canRepairSimulation = false;
+
+    // the period and step the tiles were last drawn at, -1 when nothing is
+    private int drawnPeriod = -1;
+    private int drawnStep;
+
     private int TILE_GAP = 1;
     private int TILE_LENGTH = 20;
     private int TILE_SPACE = TILE_GAP + TILE_LENGTH;
@@ -1028,6 +1160,7 @@ public class Simulator {
 
     private int ACTOR_TRAVERSAL_FREQUENCY = -1;
     private int TILE_SCALE = -1;
+    private int TILE_CAPACITY = LocationData.AUTO_CAPACITY;
 
     private void initColors() {
         
@@ -1098,7 +1231,7 @@ public class Simulator {
         for (int r = 0; r < grid.getHeight(); r++) {
             for (int c = 0; c < grid.getWidth(); c++) {
 
-                Rectangle current = grid.getRectangleAt(r, c);
+                Rectangle current = rectangles[r][c];
 
                 current.setX(c * TILE_SPACE);
                 current.setY(r * TILE_SPACE);
@@ -1111,8 +1244,7 @@ public class Simulator {
 
     private boolean canSimulate() { 
 
-        return recentlyVerified 
-            && recentlyGeneratedSchedules
+        return recentlyGeneratedSchedules
             && ACTOR_TRAVERSAL_FREQUENCY > 0
             && TILE_SCALE > 0
             && !("".equals(DISTANCE_UNIT))
@@ -1124,7 +1256,7 @@ public class Simulator {
         for (int r = 0; r < grid.getHeight(); r++) {
             
             for (int c = 0; c < grid.getWidth(); c++) {
-                Rectangle current = grid.getRectangleAt(r, c);
+                Rectangle current = rectangles[r][c];
 
                 int period = locationData.getPeriod();
                 int step = locationData.getStep();
@@ -1169,60 +1301,71 @@ public class Simulator {
         }
     }
 
-    private void showUsageTooltips() {
+    // green at light usage, through yellow, to red at the busiest tile
+    private Color getIntensityColor(double scaleFactor) {
 
-        for (Tile validTile : grid.getValidTiles()) {
-            
-            int row = validTile.getRow();
-            int col = validTile.getCol();
-            
-            int period = locationData.getPeriod();
-            int step = locationData.getStep();
+        float red = (float) Math.max(0.0, -1.0 + (2.0 * scaleFactor));
+        float green = (float) Math.min(1.0, 2.0 - (2.0 * scaleFactor));
 
-            Tooltip usageTooltip = grid.getTooltipAt(row, col);
-            usageTooltip.setText(
-                "Usage at (" + row + ", " + col + "): " + locationData.getUsageAt(period, step, validTile)
-            );
-        }
+        return Color.color(red, green, 0);
     }
 
+    // only the tiles whose usage changed since the drawn step are redrawn
+    // when the step moves this far or less within a period
+    private static final int MAX_STEPS_REDRAWN_BY_CHANGES = 16;
+
     private void drawSimulation() {
         
         int period = locationData.getPeriod();
         int step = locationData.getStep();
 
-        for (Tile validTile : grid.getValidTiles()) {
-            
-            if ("floor".equals(validTile.getAttribute())) {
+        boolean isNearDrawnStep = period == drawnPeriod
+            && Math.abs(step - drawnStep) <= MAX_STEPS_REDRAWN_BY_CHANGES;
 
-                Color update = locationData.getIntensityAt(period, step, validTile);
-                
-                int row = validTile.getRow();
-                int col = validTile.getCol();
+        byte floorType = grid.getTypeOf("floor");
+
+        if (isNearDrawnStep) {
 
-                Rectangle rectangle = grid.getRectangleAt(row, col);
-                rectangle.setFill(update);
+            // the changes at step s lead from step s - 1 into s
+            for (int s = Math.min(step, drawnStep) + 1; s <= Math.max(step, drawnStep); s++) {
+                for (int i : locationData.getChangedTileIndicesAt(period, s)) {
+                    drawUsageAt(period, step, i, floorType);
+                }
+            }
+        }
+        else {
+            for (int i = grid.nextValidIndex(0); i >= 0; i = grid.nextValidIndex(i + 1)) {
+                drawUsageAt(period, step, i, floorType);
             }
         }
+
+        drawnPeriod = period;
+        drawnStep = step;
     }
 
-    public Simulator(int width,
-                     int height,
-                     String simulationName,
-                     String[][] attributes) {
+    private void drawUsageAt(int period, int step, int tileIndex, byte floorType) {
+
+        int row = grid.getRowOf(tileIndex);
+        int col = grid.getColOf(tileIndex);
+        Tile tile = grid.getTileAt(row, col);
+
+        if (grid.getTypeAt(row, col) == floorType) {
+            rectangles[row][col].setFill(getIntensityColor(locationData.getScaleFactorAt(period, step, tile)));
+        }
+
+        tooltips[row][col].setText(
+            "Usage at (" + row + ", " + col + "): " + locationData.getUsageAt(period, step, tile)
+        );
+    }
+
+    public Simulator(String simulationName, Grid grid) {
 
         initColors();
 
         this.simulationName = simulationName;
         this.tilePaintbrush = "floor";
 
-        this.grid = new Grid(width, height);
-
-        for (int r = 0; r < height; r++) {
-            for (int c = 0; c < width; c++) {
-                grid.setAttributeAt(r, c, attributes[r][c]);
-            }
-        }
+        this.grid = grid;
 
         this.messageLog = new MessageLog(10);
 
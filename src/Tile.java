@@ -3,36 +3,16 @@ import java.util.ArrayList;
 
 import java.lang.IllegalArgumentException;
 
-import javafx.scene.shape.*;
-import javafx.scene.control.*;
-
+// A tile is a lightweight (row, col) view into its grid; the grid owns the
+// tile type, so creating a tile on demand costs no per-tile storage.
 public class Tile {
-    
+
     private final int row;
     private final int col;
     private final Grid grid;
-    private String attribute;
-    private Rectangle rectangle;
-    private Tooltip tooltip;
-
-    private boolean isInRange(Tile tile) {
-        return tile.row >= 0 && tile.row < grid.getHeight()
-            && tile.col >= 0 && tile.col < grid.getWidth();
-    }
-
-    private boolean isTraversable(Tile tile) {
-        if (tile == null) {
-            return false;
-        }
-        return !("wall".equals(tile.attribute));
-    }
 
     public Tile(int row, int col, Grid grid) {
-        this(row, col, grid, "wall");
-    }
 
-    public Tile(int row, int col, Grid grid, String attribute) {
-        
         this.row = row;
         this.col = col;
 
@@ -41,71 +21,57 @@ public class Tile {
         }
 
         this.grid = grid;
-        this.attribute = attribute;
     }
 
     public Tile(Tile rhs) {
         this.row = rhs.row;
         this.col = rhs.col;
         this.grid = rhs.grid;
-        this.attribute = rhs.attribute;
     }
 
-    public int getRow()             { return this.row;       }
-    public int getCol()             { return this.col;       }
-    public String getAttribute()    { return this.attribute; }
-    public Rectangle getRectangle() { return this.rectangle; }
-    public Tooltip getTooltip()     { return this.tooltip;   }
-
-    public void setAttribute(String attribute)    { this.attribute = attribute; }
-    public void setRectangle(Rectangle rectangle) { this.rectangle = rectangle; }
-    public void setTooltip(Tooltip tooltip)       { this.tooltip   = tooltip;   }
-
-    private Tile up()    { return new Tile(row - 1, col, grid); }
-    private Tile down()  { return new Tile(row + 1, col, grid); }
-    private Tile left()  { return new Tile(row, col - 1, grid); }
-    private Tile right() { return new Tile(row, col + 1, grid); }
-    
-    public List<Tile> getNeighbors() {
-        
-        if ("wall".equals(attribute)) {
-            return new ArrayList<Tile>();
+    public int getRow()          { return this.row;                          }
+    public int getCol()          { return this.col;                          }
+    public int getIndex()        { return grid.getIndexOf(row, col);         }
+    public String getAttribute() { return grid.getAttributeAt(row, col);     }
+    public byte getType()        { return grid.getTypeAt(row, col);          }
+    public boolean isWall()      { return !grid.isTraversableAt(row, col);   }
+
+    private void addIfTraversable(List<Tile> neighbors, int row, int col) {
+        if (grid.isTraversableAt(row, col)) {
+            neighbors.add(new Tile(row, col, grid));
         }
+    }
 
-        List<Tile> neighborsRaw      = new ArrayList<Tile>();
-        List<Tile> neighborsFiltered = new ArrayList<Tile>();
+    public List<Tile> getNeighbors() {
 
-        neighborsRaw.add(this.up()   );
-        neighborsRaw.add(this.down() );
-        neighborsRaw.add(this.left() );
-        neighborsRaw.add(this.right());
+        List<Tile> neighbors = new ArrayList<Tile>(4);
 
-        for (Tile tile : neighborsRaw) {
-            if (isInRange(tile)) {
-                neighborsFiltered.add(tile);
-            }
+        if (isWall()) {
+            return neighbors;
         }
 
-        neighborsRaw      = neighborsFiltered;
-        neighborsFiltered = new ArrayList<Tile>();
-
-        for (Tile tile : neighborsRaw) {
-            tile.setAttribute(grid.getAttributeAt(tile.getRow(), tile.getCol()));
-            if (isTraversable(tile)) {
-                neighborsFiltered.add(tile);
-            }
-        }
+        addIfTraversable(neighbors, row - 1, col);
+        addIfTraversable(neighbors, row + 1, col);
+        addIfTraversable(neighbors, row, col - 1);
+        addIfTraversable(neighbors, row, col + 1);
 
-        return neighborsFiltered;
+        return neighbors;
     }
 
+    // the row-major index is unique for every tile in the grid, unlike the
+    // old (row << 16) + col scheme which collided past 65,536 columns
     @Override
     public int hashCode() {
-        return (row << 16) + col;
+        return getIndex();
     }
 
     @Override
     public boolean equals(Object rhs) {
+
+        if (!(rhs instanceof Tile)) {
+            return false;
+        }
+
         return row == ((Tile)rhs).row && col == ((Tile)rhs).col;
     }
 }
@@ -0,0 +1,187 @@
+import java.util.Arrays;
+
+// Every actor's path through every period, kept in flat primitive arrays.
+//
+// Distinct trajectories are stored back to back as tile indices in one int
+// array, with their start offsets in a second. Actors with the same
+// schedule walk the same paths, so they form one group that carries the
+// number of actors in it as a weight. A third array maps each (period,
+// group) to the trajectory it walks, laid out period by period so that
+// looking at every group in one period reads a contiguous range. Groups on
+// the same leg simply point at the same trajectory.
+//
+// Tiles are kept as plain indices rather than run-length encoded moves: the
+// saving comes from sharing trajectories, and the usage and congestion
+// passes read any step of any trajectory directly. Waits never touch the
+// tiles: once congestion is simulated, each period's PeriodWalks records
+// which trajectory every actor walked and where it waited as (position,
+// steps) runs, so holding actors up costs a run per wait rather than a copy
+// of the path.
+public class TrajectoryStore {
+
+    private final int groupCount;
+    private final int periodCount;
+
+    private final int[] weights;
+    private final long actorCount;
+
+    private int[] tileIndices;
+    private int tileCount;
+
+    // trajectory t covers tileIndices[trajectoryStarts[t] .. trajectoryStarts[t + 1])
+    private int[] trajectoryStarts;
+    private int trajectoryCount;
+
+    // 1st idx : p'th period * groupCount + g'th group
+    private final int[] trajectories;
+
+    // 1st idx : p'th period, null until congestion has been simulated
+    private final PeriodWalks[] walks;
+
+    // weights[g] is the number of actors in the g'th group
+    public TrajectoryStore(int[] weights, int periodCount) {
+
+        long actorCount = 0;
+
+        for (int weight : weights) {
+
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Every group needs at least one actor");
+            }
+
+            actorCount += weight;
+        }
+
+        this.groupCount = weights.length;
+        this.periodCount = periodCount;
+        this.weights = weights.clone();
+        this.actorCount = actorCount;
+
+        this.tileIndices = new int[16];
+        this.trajectoryStarts = new int[16];
+        this.trajectories = new int[groupCount * periodCount];
+        this.walks = new PeriodWalks[periodCount];
+    }
+
+    public int getGroupCount()      { return groupCount;      }
+    public long getActorCount()     { return actorCount;      }
+    public int getPeriodCount()     { return periodCount;     }
+    public int getTrajectoryCount() { return trajectoryCount; }
+    public int getTileCount()       { return tileCount;       }
+
+    public int getWeight(int group) { return weights[group]; }
+
+    // returns the new trajectory's id
+    public int addTrajectory(int[] path) {
+
+        int length = path.length;
+
+        if (length == 0) {
+            throw new IllegalArgumentException("Cannot store an empty trajectory");
+        }
+
+        if (tileCount + length > tileIndices.length) {
+            tileIndices = Arrays.copyOf(tileIndices, Math.max(tileCount + length, tileIndices.length * 2));
+        }
+
+        if (trajectoryCount + 2 > trajectoryStarts.length) {
+            trajectoryStarts = Arrays.copyOf(trajectoryStarts, trajectoryStarts.length * 2);
+        }
+
+        System.arraycopy(path, 0, tileIndices, tileCount, length);
+        tileCount += length;
+
+        trajectoryStarts[++trajectoryCount] = tileCount;
+        return trajectoryCount - 1;
+    }
+
+    public void setTrajectory(int group, int period, int trajectory) {
+
+        if (trajectory < 0 || trajectory >= trajectoryCount) {
+            throw new IllegalArgumentException("No trajectory " + trajectory);
+        }
+
+        trajectories[period * groupCount + group] = trajectory;
+    }
+
+    public int getTrajectory(int group, int period) {
+        return trajectories[period * groupCount + group];
+    }
+
+    // how the period's actors actually walked, or null before congestion has
+    // been simulated
+    public PeriodWalks getWalks(int period) { return walks[period]; }
+
+    public void setWalks(int period, PeriodWalks periodWalks) {
+        walks[period] = periodWalks;
+    }
+
+    public int getTrajectoryOffset(int trajectory) { return trajectoryStarts[trajectory]; }
+
+    public int getTrajectoryLength(int trajectory) {
+        return trajectoryStarts[trajectory + 1] - trajectoryStarts[trajectory];
+    }
+
+    // drops every trajectory no group is assigned to; ids are renumbered, so
+    // the walks are dropped too
+    public void compact() {
+
+        boolean[] isUsed = new boolean[trajectoryCount];
+        int[] renumbered = new int[trajectoryCount];
+
+        for (int trajectory : trajectories) {
+            isUsed[trajectory] = true;
+        }
+
+        int[] oldTiles = tileIndices;
+        int[] oldStarts = trajectoryStarts;
+        int oldCount = trajectoryCount;
+
+        tileIndices = new int[16];
+        trajectoryStarts = new int[16];
+        tileCount = 0;
+        trajectoryCount = 0;
+
+        for (int t = 0; t < oldCount; t++) {
+            if (isUsed[t]) {
+                renumbered[t] = addTrajectory(Arrays.copyOfRange(oldTiles, oldStarts[t], oldStarts[t + 1]));
+            }
+        }
+
+        for (int i = 0; i < trajectories.length; i++) {
+            trajectories[i] = renumbered[trajectories[i]];
+        }
+
+        Arrays.fill(walks, null);
+    }
+
+    // where the group's trajectory begins in getTileIndices()
+    public int getOffset(int group, int period) {
+        return trajectoryStarts[getTrajectory(group, period)];
+    }
+
+    public int getLength(int group, int period) {
+
+        int trajectory = getTrajectory(group, period);
+        return trajectoryStarts[trajectory + 1] - trajectoryStarts[trajectory];
+    }
+
+    public int getTileIndexAt(int group, int period, int step) {
+
+        if (step < 0 || step >= getLength(group, period)) {
+            throw new IndexOutOfBoundsException("Step " + step + " of a path of " + getLength(group, period));
+        }
+
+        return tileIndices[getOffset(group, period) + step];
+    }
+
+    public int[] getPath(int group, int period) {
+
+        int offset = getOffset(group, period);
+        return Arrays.copyOfRange(tileIndices, offset, offset + getLength(group, period));
+    }
+
+    // the backing array, for scans across many groups; it must not be
+    // modified and is replaced when it has to grow
+    public int[] getTileIndices() { return tileIndices; }
+}
@@ -0,0 +1,23 @@
+// Runs every check in turn; a failed check throws and stops the run.
+//
+// ant test
+public class AllTests {
+
+    public static void main(String[] args) {
+
+        run("Pathfinders against BFS", PathfinderTest::run);
+        run("Tracker and labeler against flood fill", ConnectivityTest::run);
+        run("Path repair against a fresh simulation", RepairTest::run);
+        run("Grouped congestion against one actor at a time", CongestionTest::run);
+
+        System.out.println("[Info] All checks passed");
+    }
+
+    private static void run(String name, Runnable check) {
+
+        long start = System.currentTimeMillis();
+        check.run();
+
+        System.out.println("[Info] " + name + ": passed in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
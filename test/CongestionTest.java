@@ -0,0 +1,78 @@
+import java.util.Arrays;
+import java.util.List;
+
+// Actors with the same schedule are simulated as one group, so grouping
+// them must give exactly the usage, period lengths and capacity counts of
+// simulating every actor on its own.
+public class CongestionTest {
+
+    private static final int ACTOR_COUNT = 400;
+
+    public static void run() {
+
+        for (int capacity = 1; capacity <= 3; capacity++) {
+            checkGroupingChangesNothing(corridor(), 3, capacity);
+            checkGroupingChangesNothing(RepairTest.hall(), 7, capacity);
+        }
+    }
+
+    // two rooms at each end of a corridor one tile wide, so actors heading
+    // both ways meet head on in it
+    private static Grid corridor() {
+
+        Grid grid = new Grid(24, 5);
+
+        for (int r = 0; r < 5; r++) {
+            for (int c = 0; c < 24; c++) {
+                grid.setAttributeAt(r, c, r == 2 || c < 3 || c > 20 ? "floor" : "wall");
+            }
+        }
+
+        grid.setAttributeAt(0, 0, TestGrids.ROOM_TYPES[0]);
+        grid.setAttributeAt(4, 0, TestGrids.ROOM_TYPES[1]);
+        grid.setAttributeAt(0, 23, TestGrids.ROOM_TYPES[2]);
+        grid.setAttributeAt(4, 23, TestGrids.ROOM_TYPES[1]);
+
+        return grid;
+    }
+
+    private static void checkGroupingChangesNothing(Grid grid, long seed, int capacity) {
+
+        ScheduleGenerator generator = new ScheduleGenerator(grid, seed);
+        List<List<Tile>> schedules = generator.generateSchedules(ACTOR_COUNT);
+
+        LocationData grouped = new LocationData(generator, schedules, grid, capacity);
+
+        generator.setGrouping(false);
+        LocationData single = new LocationData(generator, schedules, grid, capacity);
+
+        String name = "With tiles holding " + capacity + " and seed " + seed + ", ";
+
+        TestGrids.check(grouped.getOverCapacityCount() == single.getOverCapacityCount(),
+                        name + grouped.getOverCapacityCount() + " moves went over capacity in groups, "
+                      + single.getOverCapacityCount() + " one actor at a time");
+
+        TestGrids.check(grouped.getMaxUsage() == single.getMaxUsage(),
+                        name + "the busiest tile held " + grouped.getMaxUsage() + " in groups, "
+                      + single.getMaxUsage() + " one actor at a time");
+
+        int[] groupedUsage = new int[grouped.getGraph().getNodeCount()];
+        int[] singleUsage = new int[single.getGraph().getNodeCount()];
+
+        for (int p = 0; p < grouped.getPeriodCount(); p++) {
+
+            TestGrids.check(grouped.getMaxStepAt(p) == single.getMaxStepAt(p),
+                            name + "period " + p + " lasts " + grouped.getMaxStepAt(p) + " steps in groups, "
+                          + single.getMaxStepAt(p) + " one actor at a time");
+
+            for (int s = 0; s < grouped.getMaxStepAt(p); s++) {
+
+                grouped.copyUsageAt(p, s, groupedUsage);
+                single.copyUsageAt(p, s, singleUsage);
+
+                TestGrids.check(Arrays.equals(groupedUsage, singleUsage),
+                                name + "usage differs at step " + s + " of period " + p);
+            }
+        }
+    }
+}
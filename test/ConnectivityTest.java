@@ -0,0 +1,147 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// The connectivity tracker and the parallel labeler must agree with a plain
+// flood fill: the tracker's region count after every edit, and the
+// labeler's ids, sizes and bounding boxes for any number of stripes.
+public class ConnectivityTest {
+
+    private static final int[] STRIPE_COUNTS = { 1, 2, 3, 7, 64 };
+
+    public static void run() {
+
+        Random random = new Random(29);
+
+        for (int i = 0; i < 8; i++) {
+            checkLabeler(TestGrids.randomGrid(random, 40 + random.nextInt(200), 40 + random.nextInt(200), 0.3 + 0.04 * i));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            checkTracker(random, TestGrids.randomGrid(random, 60, 50, 0.4));
+        }
+    }
+
+    // region ids of every tile, numbered in row-major order of each region's
+    // first tile; -1 for walls
+    private static int[] floodFill(Grid grid) {
+
+        int width = grid.getWidth();
+        int[] labels = new int[width * grid.getHeight()];
+        int[] stack = new int[labels.length];
+        int count = 0;
+
+        Arrays.fill(labels, -1);
+
+        for (int start = 0; start < labels.length; start++) {
+
+            if (labels[start] >= 0 || !grid.isTraversableAt(start / width, start % width)) {
+                continue;
+            }
+
+            int top = 0;
+            stack[top++] = start;
+            labels[start] = count;
+
+            while (top > 0) {
+
+                int current = stack[--top];
+                int r = current / width;
+                int c = current % width;
+
+                int[] rows = { r - 1, r + 1, r, r };
+                int[] cols = { c, c, c - 1, c + 1 };
+
+                for (int n = 0; n < 4; n++) {
+
+                    int next = rows[n] * width + cols[n];
+
+                    if (grid.isTraversableAt(rows[n], cols[n]) && labels[next] < 0) {
+                        labels[next] = count;
+                        stack[top++] = next;
+                    }
+                }
+            }
+
+            count++;
+        }
+
+        return labels;
+    }
+
+    private static int countRegions(int[] labels) {
+        return Arrays.stream(labels).max().orElse(-1) + 1;
+    }
+
+    private static void checkLabeler(Grid grid) {
+
+        int width = grid.getWidth();
+        int[] expected = floodFill(grid);
+        int regionCount = countRegions(expected);
+
+        int[] sizes = new int[regionCount];
+        int[] minRows = new int[regionCount];
+        int[] minCols = new int[regionCount];
+        int[] maxRows = new int[regionCount];
+        int[] maxCols = new int[regionCount];
+
+        Arrays.fill(minRows, Integer.MAX_VALUE);
+        Arrays.fill(minCols, Integer.MAX_VALUE);
+
+        for (int i = 0; i < expected.length; i++) {
+
+            int id = expected[i];
+
+            if (id < 0) {
+                continue;
+            }
+
+            sizes[id]++;
+            minRows[id] = Math.min(minRows[id], i / width);
+            minCols[id] = Math.min(minCols[id], i % width);
+            maxRows[id] = Math.max(maxRows[id], i / width);
+            maxCols[id] = Math.max(maxCols[id], i % width);
+        }
+
+        for (int stripes : STRIPE_COUNTS) {
+
+            ComponentReport report = ComponentLabeler.label(grid, stripes);
+            String where = " with " + stripes + " stripes on a " + width + "x" + grid.getHeight() + " grid";
+
+            TestGrids.check(report.getComponentCount() == regionCount,
+                            report.getComponentCount() + " regions labeled, expected " + regionCount + where);
+
+            for (int i = 0; i < expected.length; i++) {
+                TestGrids.check(report.getLabelAt(i / width, i % width) == expected[i], "Tile " + i + " mislabeled" + where);
+            }
+
+            for (int id = 0; id < regionCount; id++) {
+                TestGrids.check(report.getSize(id) == sizes[id]
+                                && report.getMinRow(id) == minRows[id]
+                                && report.getMinCol(id) == minCols[id]
+                                && report.getMaxRow(id) == maxRows[id]
+                                && report.getMaxCol(id) == maxCols[id],
+                                "Region " + id + " has the wrong size or bounds" + where);
+            }
+        }
+    }
+
+    // painting walls and floor at random, the tracker's count must follow
+    private static void checkTracker(Random random, Grid grid) {
+
+        TestGrids.check(grid.getComponentCount() == countRegions(floodFill(grid)), "Tracker count wrong after painting");
+
+        for (int edit = 0; edit < 600; edit++) {
+
+            int r = random.nextInt(grid.getHeight());
+            int c = random.nextInt(grid.getWidth());
+
+            grid.setAttributeAt(r, c, grid.isTraversableAt(r, c) ? "wall" : "floor");
+
+            int expected = countRegions(floodFill(grid));
+
+            TestGrids.check(grid.getComponentCount() == expected,
+                            "Tracker counts " + grid.getComponentCount() + " regions after edit " + edit + ", expected " + expected);
+            TestGrids.check(grid.isContiguous() == (expected == 1), "Tracker contiguity wrong after edit " + edit);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Random;
+
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Every exact pathfinder must find a path as short as a plain BFS over the
+// grid, between random pairs of room tiles; the hierarchical one may only
+// find a valid path that is no shorter.
+public class PathfinderTest {
+
+    private static final int GRID_COUNT = 6;
+    private static final int PAIRS_PER_GRID = 150;
+
+    public static void run() {
+
+        Random random = new Random(17);
+
+        for (int i = 0; i < GRID_COUNT; i++) {
+
+            // larger than a cluster, so the hierarchical search has to cross some
+            Grid grid = TestGrids.randomGrid(random, 150, 110, 0.25 + 0.05 * i);
+            NeighborGraph graph = grid.getNeighborGraph();
+
+            int[] rooms = getRoomNodes(grid, graph);
+
+            checkFinder("bfs", graph, grid, rooms, random, () -> new BfsPathfinder(graph), true);
+            checkFinder("a_star", graph, grid, rooms, random, () -> new AStarPathfinder(graph), true);
+            checkFinder("jump_point", graph, grid, rooms, random, () -> new JumpPointPathfinder(grid, graph), true);
+            checkFinder("room_table", graph, grid, rooms, random, () -> new RoomRouteTable(graph, rooms), true);
+            checkFinder("room_table_evicting", graph, grid, rooms, random,
+                        () -> new RoomRouteTable(graph, rooms, 3 * graph.getNodeCount() / 8), true);
+            checkFinder("nearest_room", graph, grid, rooms, random,
+                        () -> new NearestRoomPathfinder(grid, graph, rooms), true);
+            checkFinder("hierarchical", graph, grid, rooms, random,
+                        () -> new HierarchicalPathfinder(grid, graph, grid.getClusterGraph()), false);
+
+            checkMultiTarget("bfs", graph, grid, rooms, random, new BfsPathfinder(graph));
+            checkMultiTarget("a_star", graph, grid, rooms, random, new AStarPathfinder(graph));
+            checkMultiTarget("jump_point", graph, grid, rooms, random, new JumpPointPathfinder(grid, graph));
+        }
+    }
+
+    private static int[] getRoomNodes(Grid grid, NeighborGraph graph) {
+
+        byte floorType = grid.getTypeOf("floor");
+
+        return IntStream.range(0, graph.getNodeCount())
+            .filter(node -> grid.getTypeAt(graph.getRow(node), graph.getCol(node)) != floorType)
+            .toArray();
+    }
+
+    private static void checkFinder(String name, NeighborGraph graph, Grid grid, int[] rooms, Random random,
+                                    Supplier<Pathfinder> factory, boolean isExact) {
+
+        Pathfinder finder = factory.get();
+
+        for (int i = 0; i < PAIRS_PER_GRID; i++) {
+
+            int from = rooms[random.nextInt(rooms.length)];
+            int to = rooms[random.nextInt(rooms.length)];
+
+            if (from == to) {
+                continue;
+            }
+
+            int expected = TestGrids.bruteDistance(grid, graph.getTileIndex(from), graph.getTileIndex(to));
+            int[] path;
+
+            try {
+                path = finder.findPath(from, to);
+            }
+            catch (RuntimeException ex) {
+                TestGrids.check(expected < 0, name + " found no path where BFS took " + expected + " moves");
+                continue;
+            }
+
+            TestGrids.check(expected >= 0, name + " found a path between unconnected tiles");
+            checkPath(name, graph, path, from, to);
+
+            int moves = path.length - 1;
+
+            if (isExact) {
+                TestGrids.check(moves == expected, name + " took " + moves + " moves where BFS took " + expected);
+            }
+            else {
+                TestGrids.check(moves >= expected, name + " took " + moves + " moves, fewer than BFS's " + expected);
+            }
+        }
+    }
+
+    // one origin to many targets at once must agree with searching each alone
+    private static void checkMultiTarget(String name, NeighborGraph graph, Grid grid, int[] rooms, Random random,
+                                         Pathfinder finder) {
+
+        for (int i = 0; i < PAIRS_PER_GRID / 10; i++) {
+
+            int from = rooms[random.nextInt(rooms.length)];
+            int[] targets = random.ints(8, 0, rooms.length)
+                .map(r -> rooms[r])
+                .filter(to -> to != from)
+                .filter(to -> TestGrids.bruteDistance(grid, graph.getTileIndex(from), graph.getTileIndex(to)) >= 0)
+                .toArray();
+
+            int[][] paths = finder.findPaths(from, targets);
+
+            for (int t = 0; t < targets.length; t++) {
+
+                int expected = TestGrids.bruteDistance(grid, graph.getTileIndex(from), graph.getTileIndex(targets[t]));
+
+                checkPath(name, graph, paths[t], from, targets[t]);
+                TestGrids.check(paths[t].length - 1 == expected,
+                                name + " multi-target took " + (paths[t].length - 1) + " moves where BFS took " + expected);
+            }
+        }
+    }
+
+    private static void checkPath(String name, NeighborGraph graph, int[] path, int from, int to) {
+
+        TestGrids.check(path[0] == from && path[path.length - 1] == to, name + " path has the wrong ends");
+
+        for (int i = 1; i < path.length; i++) {
+
+            boolean isAdjacent = false;
+
+            for (int e = graph.getNeighborStart(path[i - 1]); e < graph.getNeighborEnd(path[i - 1]); e++) {
+                isAdjacent |= graph.getNeighbor(e) == path[i];
+            }
+
+            TestGrids.check(isAdjacent, name + " path jumps between tiles that are not neighbours");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Repairing paths after an edit must give the same walking times as
+// simulating the edited grid from scratch, and a repair that is refused
+// must leave the last simulation untouched.
+public class RepairTest {
+
+    private static final int ACTOR_COUNT = 300;
+
+    public static void run() {
+
+        checkRepairMatchesRerun();
+        checkRefusedRepairKeepsResults();
+    }
+
+    // an open hall with a room in each corner and a wall down the middle,
+    // broken by a door in the middle row
+    static Grid hall() {
+
+        Grid grid = new Grid(41, 21);
+
+        for (int r = 0; r < 21; r++) {
+            for (int c = 0; c < 41; c++) {
+                grid.setAttributeAt(r, c, c == 20 && r != 10 ? "wall" : "floor");
+            }
+        }
+
+        grid.setAttributeAt(0, 0, TestGrids.ROOM_TYPES[0]);
+        grid.setAttributeAt(20, 0, TestGrids.ROOM_TYPES[1]);
+        grid.setAttributeAt(0, 40, TestGrids.ROOM_TYPES[2]);
+        grid.setAttributeAt(20, 40, TestGrids.ROOM_TYPES[0]);
+
+        return grid;
+    }
+
+    private static void checkRepairMatchesRerun() {
+
+        Grid grid = hall();
+        ScheduleGenerator generator = new ScheduleGenerator(grid, 5);
+        List<List<Tile>> schedules = generator.generateSchedules(ACTOR_COUNT);
+
+        // no tile ever fills up, so a period lasts as long as its longest path
+        LocationData data = new LocationData(generator, schedules, grid, Integer.MAX_VALUE);
+
+        // a second door shortens the legs that cross low down, and closing
+        // the middle one lengthens the rest
+        grid.setAttributeAt(18, 20, "floor");
+        grid.setAttributeAt(10, 20, "wall");
+
+        int repaired = data.repairPaths(Arrays.asList(grid.getIndexOf(18, 20), grid.getIndexOf(10, 20)));
+        LocationData rerun = new LocationData(generator, schedules, grid, Integer.MAX_VALUE);
+
+        TestGrids.check(repaired > 0, "Moving the door re-routed no paths");
+
+        for (int p = 0; p < data.getPeriodCount(); p++) {
+            TestGrids.check(data.getMaxStepAt(p) == rerun.getMaxStepAt(p),
+                            "Period " + p + " lasts " + data.getMaxStepAt(p) + " steps after repair, "
+                          + rerun.getMaxStepAt(p) + " when simulated again");
+        }
+    }
+
+    private static void checkRefusedRepairKeepsResults() {
+
+        Grid grid = hall();
+        ScheduleGenerator generator = new ScheduleGenerator(grid, 11);
+        LocationData data = new LocationData(generator, generator.generateSchedules(ACTOR_COUNT), grid, 2);
+
+        int[][][] before = snapshot(data);
+
+        // closing the only door cuts every leg that crosses the hall
+        grid.setAttributeAt(10, 20, "wall");
+        expectRefusal(data, Collections.singletonList(grid.getIndexOf(10, 20)), "a cut path");
+        grid.setAttributeAt(10, 20, "floor");
+
+        // a room tile closed without being reported
+        grid.setAttributeAt(0, 0, "wall");
+        expectRefusal(data, Collections.singletonList(grid.getIndexOf(5, 5)), "a closed room tile");
+        grid.setAttributeAt(0, 0, TestGrids.ROOM_TYPES[0]);
+
+        TestGrids.check(Arrays.deepEquals(before, snapshot(data)), "A refused repair changed the simulation");
+
+        // with the edits undone, simulating again has to give the same result
+        data.repairPaths(Collections.<Integer>emptyList());
+        TestGrids.check(Arrays.deepEquals(before, snapshot(data)), "A refused repair left the paths out of step");
+    }
+
+    private static void expectRefusal(LocationData data, List<Integer> changedTiles, String what) {
+
+        try {
+            data.repairPaths(changedTiles);
+        }
+        catch (RuntimeException ex) {
+            return;
+        }
+
+        throw new AssertionError("Repair went ahead despite " + what);
+    }
+
+    // the usage of every node at every step of every period
+    private static int[][][] snapshot(LocationData data) {
+
+        int[][][] usage = new int[data.getPeriodCount()][][];
+
+        for (int p = 0; p < usage.length; p++) {
+
+            usage[p] = new int[data.getMaxStepAt(p)][data.getGraph().getNodeCount()];
+
+            for (int s = 0; s < usage[p].length; s++) {
+                data.copyUsageAt(p, s, usage[p][s]);
+            }
+        }
+
+        return usage;
+    }
+}
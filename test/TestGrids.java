@@ -0,0 +1,78 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// Random maps and brute-force reference answers shared by the checks
+public class TestGrids {
+
+    public static final String[] ROOM_TYPES = { "room_red", "room_green", "room_blue" };
+
+    // each tile is wall with the given probability, otherwise mostly floor
+    // with the odd room tile
+    public static Grid randomGrid(Random random, int width, int height, double wallDensity) {
+
+        Grid grid = new Grid(width, height);
+
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+
+                if (random.nextDouble() < wallDensity) {
+                    continue;
+                }
+
+                String attribute = random.nextInt(40) == 0
+                    ? ROOM_TYPES[random.nextInt(ROOM_TYPES.length)]
+                    : "floor";
+
+                grid.setAttributeAt(r, c, attribute);
+            }
+        }
+
+        return grid;
+    }
+
+    // breadth-first distance between two tiles over a plain 4-neighbour
+    // scan of the grid, -1 when they are not connected
+    public static int bruteDistance(Grid grid, int fromIndex, int toIndex) {
+
+        int width = grid.getWidth();
+        int[] distances = new int[width * grid.getHeight()];
+        int[] queue = new int[distances.length];
+
+        Arrays.fill(distances, -1);
+
+        int head = 0;
+        int tail = 0;
+
+        distances[fromIndex] = 0;
+        queue[tail++] = fromIndex;
+
+        while (head != tail) {
+
+            int current = queue[head++];
+            int r = current / width;
+            int c = current % width;
+
+            int[] rows = { r - 1, r + 1, r, r };
+            int[] cols = { c, c, c - 1, c + 1 };
+
+            for (int i = 0; i < 4; i++) {
+
+                int next = rows[i] * width + cols[i];
+
+                if (grid.isTraversableAt(rows[i], cols[i]) && distances[next] < 0) {
+                    distances[next] = distances[current] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        return distances[toIndex];
+    }
+
+    public static void check(boolean condition, String message) {
+
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}